@@ -0,0 +1,36 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyzer throughput over parsed benchmark programs. Analysis only sets the
+ * types and variables of the tree, so the same tree is analyzed repeatedly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class AnalyzerBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public Programs.Size size;
+
+    private Ast.Source ast;
+
+    @Setup
+    public void setup() {
+        ast = new Parser(new Lexer(Programs.generate(size)).lex()).parseSource();
+    }
+
+    @Benchmark
+    public Scope analyze() {
+        Analyzer analyzer = new Analyzer(new Scope(null));
+        analyzer.visit(ast);
+        return analyzer.getScope();
+    }
+
+}
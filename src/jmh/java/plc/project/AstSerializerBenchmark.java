@@ -0,0 +1,50 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading an analyzed benchmark program from its serialized form, compared
+ * with lexing, parsing and analyzing its source, along with writing it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class AstSerializerBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public Programs.Size size;
+
+    private String source;
+    private Ast.Source ast;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        source = Programs.generate(size);
+        ast = compile();
+        bytes = AstSerializer.write(ast);
+    }
+
+    @Benchmark
+    public Ast.Source compile() {
+        Ast.Source ast = new Parser(new Lexer(source).lexBuffer()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        return ast;
+    }
+
+    @Benchmark
+    public Ast.Source read() {
+        return AstSerializer.read(bytes);
+    }
+
+    @Benchmark
+    public byte[] write() {
+        return AstSerializer.write(ast);
+    }
+
+}
@@ -0,0 +1,65 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walking every node of a benchmark program in its flat form with a cursor,
+ * compared with walking its AST, along with converting between the two.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class FlatAstBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public Programs.Size size;
+
+    private Ast.Source ast;
+    private FlatAst flat;
+
+    @Setup
+    public void setup() {
+        ast = new Parser(new Lexer(Programs.generate(size)).lexBuffer()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        flat = FlatAst.of(ast);
+    }
+
+    @Benchmark
+    public FlatAst convert() {
+        return FlatAst.of(ast);
+    }
+
+    @Benchmark
+    public Ast.Source toAst() {
+        return flat.toAst();
+    }
+
+    @Benchmark
+    public int walkAst() {
+        int[] count = {0};
+        AstTraversal.preOrder(ast, node -> count[0]++);
+        return count[0];
+    }
+
+    @Benchmark
+    public int walkFlat() {
+        FlatAst.Cursor cursor = flat.cursor();
+        int count = 1;
+        while (true) {  // Pre-order walk, moving up from a last child until a node has a next sibling
+            if (!cursor.gotoFirstChild()) {
+                while (!cursor.gotoNextSibling()) {
+                    if (!cursor.gotoParent()) {
+                        return count;
+                    }
+                }
+            }
+            count++;
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generator throughput over analyzed benchmark programs, writing the Java
+ * source into memory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class GeneratorBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public Programs.Size size;
+
+    private Ast.Source ast;
+
+    @Setup
+    public void setup() {
+        ast = new Parser(new Lexer(Programs.generate(size)).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);   // The generator reads the types set by the analyzer
+    }
+
+    @Benchmark
+    public String generate() {
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(ast);
+        return writer.toString();
+    }
+
+}
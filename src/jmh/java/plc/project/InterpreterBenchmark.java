@@ -0,0 +1,34 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interpreter throughput over parsed benchmark programs, measured from
+ * defining the globals and functions to main returning.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class InterpreterBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public Programs.Size size;
+
+    private Ast.Source ast;
+
+    @Setup
+    public void setup() {
+        ast = new Parser(new Lexer(Programs.generate(size)).lex()).parseSource();
+    }
+
+    @Benchmark
+    public Object interpret() {
+        return new Interpreter(new Scope(null)).visit(ast).getValue();
+    }
+
+}
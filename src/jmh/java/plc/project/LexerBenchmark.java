@@ -0,0 +1,45 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lexer throughput over the benchmark programs, comparing the token list,
+ * token buffer and parallel entry points.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class LexerBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public Programs.Size size;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = Programs.generate(size);
+    }
+
+    @Benchmark
+    public List<Token> lex() {
+        return new Lexer(source).lex();
+    }
+
+    @Benchmark
+    public TokenBuffer lexBuffer() {
+        return new Lexer(source).lexBuffer();
+    }
+
+    @Benchmark
+    public List<Token> lexParallel() {
+        return new Lexer(source).lexParallel();
+    }
+
+}
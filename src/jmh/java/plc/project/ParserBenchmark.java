@@ -0,0 +1,77 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parser throughput over already lexed benchmark programs, from both a token
+ * list and a token buffer, in parallel and iteratively, over a source made up of long
+ * expressions, and reparsing a program after inserting a statement into one
+ * of its functions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public Programs.Size size;
+
+    private static final String EXPRESSION = "a + b * (c - 1) / 2 > x && y || f(z, 3) == 4.5 - g() ^ 2 != \"s\" + l[i + 1]";
+
+    private List<Token> tokens;
+    private TokenBuffer buffer;
+    private TokenBuffer expressions;
+    private ParsedSource parsed;
+    private int statement;
+
+    @Setup
+    public void setup() {
+        String source = Programs.generate(size);
+        tokens = new Lexer(source).lex();
+        buffer = new Lexer(source).lexBuffer();
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10 * size.getFunctions(); i++) {
+            builder.append("VAL v").append(i).append(": Boolean = ").append(EXPRESSION).append(";\n");
+        }
+        expressions = new Lexer(builder.toString()).lexBuffer();
+        parsed = ParsedSource.parse(buffer);
+        statement = source.indexOf(";\n", source.length() / 2) + 2;  // After a statement in the middle of the program
+    }
+
+    @Benchmark
+    public Ast.Source parse() {
+        return new Parser(tokens).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source parseBuffer() {
+        return new Parser(buffer).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source parseParallel() {
+        return new Parser(buffer).parseSourceParallel();
+    }
+
+    @Benchmark
+    public Ast.Source parseIterative() {
+        return new Parser(buffer).parseSourceIterative();
+    }
+
+    @Benchmark
+    public Ast.Source parseExpressions() {
+        return new Parser(expressions).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source reparse() {
+        return parsed.edit(statement, 0, "x;").getAst();
+    }
+
+}
@@ -0,0 +1,47 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end throughput from source text to a result, either interpreting the
+ * program or analyzing it and generating Java source.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class PipelineBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public Programs.Size size;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = Programs.generate(size);
+    }
+
+    @Benchmark
+    public Object interpret() {
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        return new Interpreter(new Scope(null)).visit(ast).getValue();
+    }
+
+    @Benchmark
+    public String compile() {
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(ast);
+        return writer.toString();
+    }
+
+}
@@ -0,0 +1,37 @@
+package plc.project;
+
+/**
+ * Source programs used by the benchmarks, created by the
+ * {@link ProgramGenerator} with a fixed seed so every run measures the same
+ * input.
+ */
+public final class Programs {
+
+    public enum Size {
+        SMALL(1),
+        MEDIUM(100),
+        LARGE(5000);
+
+        private final int functions;
+
+        Size(int functions) {
+            this.functions = functions;
+        }
+
+        public int getFunctions() {
+            return functions;
+        }
+
+    }
+
+    private static final long SEED = 0;
+    private static final int STATEMENTS = 4;
+    private static final int DEPTH = 2;
+
+    private Programs() {}
+
+    public static String generate(Size size) {
+        return new ProgramGenerator(SEED, size.getFunctions(), STATEMENTS, DEPTH).generate();
+    }
+
+}
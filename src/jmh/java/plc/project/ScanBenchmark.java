@@ -0,0 +1,77 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lexing inputs dominated by the runs which are scanned a word at a time
+ * (long literals, long identifiers and deeply indented code) along with a
+ * generated program, comparing a String input, which is scanned a character
+ * at a time, with the same input as UTF-8 bytes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class ScanBenchmark {
+
+    public enum Shape {
+        LITERALS,
+        IDENTIFIERS,
+        INDENTED,
+        PROGRAM
+    }
+
+    private static final int LINES = 10_000;
+    private static final String TEXT = "a long string literal, such as a message or a line of a table, which is scanned a word at a time";
+    private static final String INDENT = "                                ";
+
+    @Param({"LITERALS", "IDENTIFIERS", "INDENTED", "PROGRAM"})
+    public Shape shape;
+
+    private String source;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        StringBuilder builder = new StringBuilder();
+        switch (shape) {
+            case LITERALS:
+                for (int i = 0; i < LINES; i++) {
+                    builder.append("print(\"").append(TEXT).append(' ').append(TEXT).append("\\n\");\n");
+                }
+                break;
+            case IDENTIFIERS:
+                for (int i = 0; i < LINES; i++) {
+                    builder.append("a_rather_long_variable_name = another_rather_long_variable_name;\n");
+                }
+                break;
+            case INDENTED:
+                for (int i = 0; i < LINES; i++) {
+                    builder.append(INDENT).append(INDENT).append("x = y;\n");
+                }
+                break;
+            default:
+                builder.append(Programs.generate(Programs.Size.LARGE));
+                break;
+        }
+        source = builder.toString();
+        bytes = source.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<Token> lexString() {
+        return new Lexer(source).lex();
+    }
+
+    @Benchmark
+    public List<Token> lexBytes() {
+        return new Lexer(bytes).lex();
+    }
+
+}
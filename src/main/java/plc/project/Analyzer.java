@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -18,6 +19,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
     public Scope scope;
     private Environment.Type funcRet;   // Used to store the return type of functions undergoing analysis
+    private Object[] attachments;   // Types, variables and functions attached to the nodes of the flat tree undergoing analysis
 
     public Analyzer(Scope parent) {
         scope = new Scope(parent);
@@ -41,6 +43,27 @@ public final class Analyzer implements Ast.Visitor<Void> {
         return null;
     }
 
+    /**
+     * Analyzes a flat tree in the same way as its {@link Ast.Source}, walking
+     * it with a cursor without converting any of it to an AST. Since the flat
+     * tree itself is read-only, returns a copy of it with the types,
+     * variables and functions attached.
+     */
+    public FlatAst visit(FlatAst ast) {
+        attachments = new Object[ast.size()];
+        try {
+            visitChildren(ast.cursor(), 0, Integer.MAX_VALUE);
+            // Check for the exception condition:
+            if (!scope.lookupFunction("main", 0).getReturnType().equals(Environment.Type.INTEGER)) {
+                throw new RuntimeException("Main method must have an integer return type.");
+            }
+            return ast.attach(attachments);
+        }
+        finally {
+            attachments = null;
+        }
+    }
+
     @Override
     public Void visit(Ast.Global ast) {
         // If the value is present, visit it. Then check that it is assignable to the variable:
@@ -220,35 +243,46 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
     @Override
     public Void visit(Ast.Expression.Literal ast) {
-        // Check for integer exception condition (byte array has length greater than 4 bytes (32 bits))
-        if (ast.getLiteral() instanceof BigInteger) {
-            if (((BigInteger) ast.getLiteral()).toByteArray().length > 4) {
+        ast.setType(literalType(ast.getLiteral(), ast.hasPrimitive(), ast.getLongValue(), ast.getDoubleValue()));
+
+        return null;
+    }
+
+    /**
+     * Returns the type of a literal, using its pre-parsed long or double if
+     * it has one.
+     */
+    private static Environment.Type literalType(Object literal, boolean primitive, long longValue, double doubleValue) {
+        // Check for integer exception condition (value does not fit in 32 bits)
+        if (literal instanceof BigInteger) {
+            boolean overflow = primitive
+                    ? longValue != (int) longValue
+                    : ((BigInteger) literal).bitLength() > 31;
+            if (overflow) {
                 throw new RuntimeException("Integer value will overflow.");
             }
-            ast.setType(Environment.Type.INTEGER);
+            return Environment.Type.INTEGER;
         }
         // Check for decimal exception condition (overflow occurs when casting from BigDecimal to double)
-        else if (ast.getLiteral() instanceof BigDecimal) {
-            double doubleVal = ((BigDecimal) ast.getLiteral()).doubleValue();
+        else if (literal instanceof BigDecimal) {
+            double doubleVal = primitive ? doubleValue : ((BigDecimal) literal).doubleValue();
             if (doubleVal == Double.POSITIVE_INFINITY || doubleVal == Double.NEGATIVE_INFINITY) {
                 throw new RuntimeException("Decimal value will overflow.");
             }
-            ast.setType(Environment.Type.DECIMAL);
+            return Environment.Type.DECIMAL;
         }
-        else if (ast.getLiteral() instanceof Boolean) {
-            ast.setType(Environment.Type.BOOLEAN);
+        else if (literal instanceof Boolean) {
+            return Environment.Type.BOOLEAN;
         }
-        else if (ast.getLiteral() instanceof Character) {
-            ast.setType(Environment.Type.CHARACTER);
+        else if (literal instanceof Character) {
+            return Environment.Type.CHARACTER;
         }
-        else if (ast.getLiteral() instanceof String) {
-            ast.setType(Environment.Type.STRING);
+        else if (literal instanceof String) {
+            return Environment.Type.STRING;
         }
         else {
-            ast.setType(Environment.Type.NIL);
+            return Environment.Type.NIL;
         }
-
-        return null;
     }
 
     @Override
@@ -267,77 +301,66 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
     @Override
     public Void visit(Ast.Expression.Binary ast) {
-        switch (ast.getOperator()) {
+        // Visit the left and right sides of the expression, then assign a type to the AST:
+        visit(ast.getLeft());
+        visit(ast.getRight());
+        ast.setType(binaryType(ast.getOperator(), ast.getLeft()::getType, ast.getRight()::getType));
+
+        return null;
+    }
+
+    /**
+     * Returns the type of a binary expression from the types of its sides,
+     * getting each type only when its check needs it, or {@code null} for an
+     * unknown operator.
+     */
+    private static Environment.Type binaryType(String operator, Supplier<Environment.Type> left, Supplier<Environment.Type> right) {
+        switch (operator) {
             case "&&":
             case"||": {
-                // Visit the left and right sides of the expression:
-                visit(ast.getLeft());
-                visit(ast.getRight());
-                // Assign a type to the AST:
-                if (ast.getLeft().getType().equals(Environment.Type.BOOLEAN) && ast.getRight().getType().equals(Environment.Type.BOOLEAN)) {
-                    ast.setType(Environment.Type.BOOLEAN);
+                if (left.get().equals(Environment.Type.BOOLEAN) && right.get().equals(Environment.Type.BOOLEAN)) {
+                    return Environment.Type.BOOLEAN;
                 }
                 else {
                     throw new RuntimeException("Expected boolean values on both sides of the binary expression.");
                 }
-                break;
             }
             case "<":
             case ">":
             case "==":
             case "!=": {
-                // Visit the left and right sides of the expression:
-                visit(ast.getLeft());
-                visit(ast.getRight());
                 // Check that both sides of the expression are subtypes of COMPARABLE:
-                requireAssignable(Environment.Type.COMPARABLE, ast.getLeft().getType());
-                requireAssignable(Environment.Type.COMPARABLE, ast.getRight().getType());
-                // Check that both sides of the expression are of the same type. If so, assign a type to the AST:
-                if (ast.getLeft().getType().equals(ast.getRight().getType())) {
-                    ast.setType(Environment.Type.BOOLEAN);
+                requireAssignable(Environment.Type.COMPARABLE, left.get());
+                requireAssignable(Environment.Type.COMPARABLE, right.get());
+                // Check that both sides of the expression are of the same type:
+                if (left.get().equals(right.get())) {
+                    return Environment.Type.BOOLEAN;
                 }
                 else {
                     throw new RuntimeException("Left and right sides of equality statement must match.");
                 }
-                break;
             }
             case "+": {
-                // Visit the left and right sides of the expression:
-                visit(ast.getLeft());
-                visit(ast.getRight());
-                // Assign a type to the AST:
-                if (ast.getLeft().getType().equals(Environment.Type.STRING) || ast.getRight().getType().equals(Environment.Type.STRING)) {
-                    ast.setType(Environment.Type.STRING);
+                if (left.get().equals(Environment.Type.STRING) || right.get().equals(Environment.Type.STRING)) {
+                    return Environment.Type.STRING;
                 }
-                else checkTypesMatch(ast);
-                break;
+                else return checkTypesMatch(left, right);
             }
             case "-":
             case "*":
-            case "/": {
-                // Visit the left and right sides of the expression:
-                visit(ast.getLeft());
-                visit(ast.getRight());
-                // Assign a type to the AST:
-                checkTypesMatch(ast);
-                break;
-            }
+            case "/":
+                return checkTypesMatch(left, right);
             case "^": {
-                // Visit the left and right sides of the expression:
-                visit(ast.getLeft());
-                visit(ast.getRight());
-                // Assign a type to the AST:
-                if ((ast.getLeft().getType().equals(Environment.Type.INTEGER) || ast.getLeft().getType().equals(Environment.Type.DECIMAL)) && ast.getRight().getType().equals(Environment.Type.INTEGER)) {
-                    ast.setType(ast.getLeft().getType());
+                if ((left.get().equals(Environment.Type.INTEGER) || left.get().equals(Environment.Type.DECIMAL)) && right.get().equals(Environment.Type.INTEGER)) {
+                    return left.get();
                 }
                 else {
                     throw new RuntimeException("Invalid binary expression.");
                 }
-                break;
             }
+            default:
+                return null;
         }
-
-        return null;
     }
 
     @Override
@@ -398,16 +421,277 @@ public final class Analyzer implements Ast.Visitor<Void> {
         throw new RuntimeException("Invalid assignment: attempting to assign " + type.getName() + " to a " + target.getName() + " variable.");
     }
 
-    private void checkTypesMatch(Ast.Expression.Binary ast) {   // Used in visit(Ast.Expression.Binary) -- checks if rhs and lhs types match and sets the ast type accordingly
-        if (ast.getLeft().getType().equals(Environment.Type.INTEGER) && ast.getRight().getType().equals(Environment.Type.INTEGER)) {
-            ast.setType(Environment.Type.INTEGER);
+    private static Environment.Type checkTypesMatch(Supplier<Environment.Type> left, Supplier<Environment.Type> right) {   // Used in binaryType -- checks if rhs and lhs types match and returns the type accordingly
+        if (left.get().equals(Environment.Type.INTEGER) && right.get().equals(Environment.Type.INTEGER)) {
+            return Environment.Type.INTEGER;
         }
-        else if (ast.getLeft().getType().equals(Environment.Type.DECIMAL) && ast.getRight().getType().equals(Environment.Type.DECIMAL)) {
-            ast.setType(Environment.Type.DECIMAL);
+        else if (left.get().equals(Environment.Type.DECIMAL) && right.get().equals(Environment.Type.DECIMAL)) {
+            return Environment.Type.DECIMAL;
         }
         else {
             throw new RuntimeException("Invalid binary expression.");
         }
     }
+
+    /**
+     * Analyzes the node at the cursor as its AST would be visited, recording
+     * what is attached to it and returning its type if it is an expression.
+     * The type is {@code null} where the AST's would be uninitialized, which
+     * {@link #initialized} checks wherever the AST's would be read. The cursor
+     * is left at the node unless an exception is thrown.
+     */
+    private Environment.Type visit(FlatAst.Cursor cursor) {
+        switch (cursor.kind()) {
+            case GLOBAL:
+                visitGlobal(cursor);
+                return null;
+            case FUNCTION:
+                visitFunction(cursor);
+                return null;
+            case EXPRESSION_STATEMENT: {
+                if (firstChild(cursor) != FlatAst.Kind.CALL) {
+                    throw new RuntimeException("Expected a function expression.");
+                }
+                visitChild(cursor, 0);
+                return null;
+            }
+            case DECLARATION:
+                visitDeclaration(cursor);
+                return null;
+            case ASSIGNMENT: {
+                if (firstChild(cursor) != FlatAst.Kind.ACCESS) {
+                    throw new RuntimeException("Invalid assignment operation.");
+                }
+                Environment.Type receiver = visitChild(cursor, 0);
+                Environment.Type value = visitChild(cursor, 1);
+                requireAssignable(receiver, initialized(value));
+                return null;
+            }
+            case IF:
+                visitIf(cursor);
+                return null;
+            case SWITCH:
+                visitSwitch(cursor);
+                return null;
+            case CASE: {
+                scope = new Scope(scope);
+                visitChildren(cursor, cursor.hasCaseValue() ? 1 : 0, Integer.MAX_VALUE);
+                scope = scope.getParent();
+                return null;
+            }
+            case WHILE: {
+                if (!initialized(visitChild(cursor, 0)).equals(Environment.Type.BOOLEAN)) {
+                    throw new RuntimeException("Invalid condition in WHILE statement.");
+                }
+                scope = new Scope(scope);
+                visitChildren(cursor, 1, Integer.MAX_VALUE);
+                scope = scope.getParent();
+                return null;
+            }
+            case RETURN:
+                requireAssignable(funcRet, initialized(visitChild(cursor, 0)));
+                return null;
+            case LITERAL:
+                return attach(cursor, literalType(cursor.getLiteral(), cursor.hasPrimitive(), cursor.getLongValue(), cursor.getDoubleValue()));
+            case GROUP: {
+                if (firstChild(cursor) != FlatAst.Kind.BINARY) {
+                    throw new RuntimeException("The grouped expression is not binary.");
+                }
+                return attach(cursor, initialized(visitChild(cursor, 0)));
+            }
+            case BINARY: {
+                Environment.Type left = visitChild(cursor, 0);
+                Environment.Type right = visitChild(cursor, 1);
+                return attach(cursor, binaryType(cursor.getOperator(), () -> initialized(left), () -> initialized(right)));
+            }
+            case ACCESS: {
+                if (cursor.getChildCount() > 0 && !initialized(visitChild(cursor, 0)).equals(Environment.Type.INTEGER)) {
+                    throw new RuntimeException("Offset must be an integer value.");
+                }
+                return attach(cursor, scope.lookupVariable(cursor.getName())).getType();
+            }
+            case CALL:
+                return visitCall(cursor);
+            case LIST: {
+                // The list's type is attached by its global before it is visited
+                Environment.Type type = (Environment.Type) attachments[cursor.node()];
+                if (cursor.gotoFirstChild()) {
+                    do {
+                        Environment.Type value = visit(cursor);
+                        requireAssignable(initialized(type), initialized(value));
+                    } while (cursor.gotoNextSibling());
+                    cursor.gotoParent();
+                }
+                return type;
+            }
+            default:
+                throw new AssertionError("Unimplemented node kind: " + cursor.kind() + ".");
+        }
+    }
+
+    private void visitGlobal(FlatAst.Cursor cursor) {
+        String typeName = cursor.getTypeName().get();
+        if (cursor.gotoFirstChild()) {
+            // Set the type of a list value before visiting it, as visit(Ast.Global) does:
+            if (cursor.kind() == FlatAst.Kind.LIST) {
+                attach(cursor, Environment.getType(typeName));
+            }
+            Environment.Type value = visit(cursor);
+            cursor.gotoParent();
+            requireAssignable(Environment.getType(typeName), initialized(value));
+        }
+        scope.defineVariable(cursor.getName(), cursor.getName(), Environment.getType(typeName), cursor.getMutable(), Environment.NIL);
+        attach(cursor, scope.lookupVariable(cursor.getName()));
+    }
+
+    private void visitFunction(FlatAst.Cursor cursor) {
+        List<String> parameters = cursor.getParameters();
+        List<String> parameterTypeNames = cursor.getParameterTypeNames();
+        List<Environment.Type> paramTypes = new ArrayList<>();
+        for (String i : parameterTypeNames) {
+            paramTypes.add(Environment.getType(i));
+        }
+        String returnTypeName = cursor.getTypeName().orElse("Nil");
+        scope.defineFunction(cursor.getName(), cursor.getName(), paramTypes, Environment.getType(returnTypeName), args -> Environment.NIL);
+        attach(cursor, scope.lookupFunction(cursor.getName(), parameters.size()));
+        scope = new Scope(scope);
+        for (int i = 0; i < parameters.size(); i++) {
+            scope.defineVariable(parameters.get(i), parameters.get(i), Environment.getType(parameterTypeNames.get(i)), true, Environment.NIL);
+        }
+        funcRet = Environment.getType(returnTypeName);
+        visitChildren(cursor, 0, Integer.MAX_VALUE);
+        funcRet = null;
+        scope = scope.getParent();
+    }
+
+    private void visitDeclaration(FlatAst.Cursor cursor) {
+        Environment.Type type;
+        Optional<String> typeName = cursor.getTypeName();
+        boolean value = cursor.getChildCount() > 0;
+        if (!typeName.isPresent()) {
+            if (!value) {
+                throw new RuntimeException("Type of declared variable could not be discerned.");
+            }
+            type = initialized(visitChild(cursor, 0));
+        }
+        else {
+            type = Environment.getType(typeName.get());
+            if (value) {
+                requireAssignable(type, initialized(visitChild(cursor, 0)));
+            }
+        }
+        scope.defineVariable(cursor.getName(), cursor.getName(), type, true, Environment.NIL);
+        attach(cursor, scope.lookupVariable(cursor.getName()));
+    }
+
+    private void visitIf(FlatAst.Cursor cursor) {
+        int then = 1 + cursor.getThenCount();   // Index of the first else statement
+        if (!initialized(visitChild(cursor, 0)).equals(Environment.Type.BOOLEAN)) {
+            throw new RuntimeException("Invalid condition in IF statement.");
+        }
+        if (then == 1) {
+            throw new RuntimeException("THEN block cannot have an empty body");
+        }
+        // Evaluate the else statements, then the then statements, each inside a new scope:
+        scope = new Scope(scope);
+        visitChildren(cursor, then, Integer.MAX_VALUE);
+        scope = scope.getParent();
+        scope = new Scope(scope);
+        visitChildren(cursor, 1, then);
+        scope = scope.getParent();
+    }
+
+    private void visitSwitch(FlatAst.Cursor cursor) {
+        Environment.Type condition = visitChild(cursor, 0);
+        int cases = cursor.getChildCount() - 1;
+        cursor.gotoFirstChild();
+        for (int i = 0; i < cases; i++) {
+            cursor.gotoNextSibling();   // Each case after the condition
+            if (cursor.hasCaseValue()) {
+                if (i == cases - 1) {
+                    throw new RuntimeException("Default case cannot specify a value.");
+                }
+                Environment.Type value = visitChild(cursor, 0);
+                if (!initialized(value).equals(initialized(condition))) {
+                    throw new RuntimeException("Condition and case value must match in a switch statement.");
+                }
+            }
+            visit(cursor);
+        }
+        cursor.gotoParent();
+    }
+
+    private Environment.Type visitCall(FlatAst.Cursor cursor) {
+        Environment.Function function = attach(cursor, scope.lookupFunction(cursor.getName(), cursor.getChildCount()));
+        List<Environment.Type> params = function.getParameterTypes();
+        if (cursor.gotoFirstChild()) {
+            int i = 0;
+            do {
+                requireAssignable(params.get(i++), initialized(visit(cursor)));
+            } while (cursor.gotoNextSibling());
+            cursor.gotoParent();
+        }
+        return function.getReturnType();
+    }
+
+    /**
+     * Analyzes the child of the node at the cursor with the given index,
+     * returning to the node.
+     */
+    private Environment.Type visitChild(FlatAst.Cursor cursor, int index) {
+        cursor.gotoFirstChild();
+        for (int i = 0; i < index; i++) {
+            cursor.gotoNextSibling();
+        }
+        Environment.Type type = visit(cursor);
+        cursor.gotoParent();
+        return type;
+    }
+
+    /**
+     * Analyzes the children of the node at the cursor from the index
+     * {@code from} up to but excluding {@code to}, returning to the node.
+     */
+    private void visitChildren(FlatAst.Cursor cursor, int from, int to) {
+        if (from >= to || !cursor.gotoFirstChild()) {
+            return;
+        }
+        for (int i = 0; i < to; i++) {
+            if (i >= from) {
+                visit(cursor);
+            }
+            if (i + 1 == to || !cursor.gotoNextSibling()) {
+                break;
+            }
+        }
+        cursor.gotoParent();
+    }
+
+    /**
+     * Returns the kind of the first child of the node at the cursor,
+     * returning to the node.
+     */
+    private static FlatAst.Kind firstChild(FlatAst.Cursor cursor) {
+        cursor.gotoFirstChild();
+        FlatAst.Kind kind = cursor.kind();
+        cursor.gotoParent();
+        return kind;
+    }
+
+    private <T> T attach(FlatAst.Cursor cursor, T attachment) {
+        attachments[cursor.node()] = attachment;
+        return attachment;
+    }
+
+    /**
+     * Returns the type of an expression of the flat tree, throwing where the
+     * type of its AST would be read while uninitialized.
+     */
+    private static Environment.Type initialized(Environment.Type type) {
+        if (type == null) {
+            throw new IllegalStateException("type is uninitialized");
+        }
+        return type;
+    }
 }
 
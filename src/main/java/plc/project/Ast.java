@@ -1,5 +1,7 @@
 package plc.project;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -93,6 +95,10 @@ public abstract class Ast {
             this.variable = variable;
         }
 
+        Environment.Variable getVariableOrNull() {
+            return variable;
+        }
+
 
         @Override
         public boolean equals(Object obj) {
@@ -173,6 +179,10 @@ public abstract class Ast {
             this.function = function;
         }
 
+        Environment.Function getFunctionOrNull() {
+            return function;
+        }
+
 
         @Override
         public boolean equals(Object obj) {
@@ -268,6 +278,10 @@ public abstract class Ast {
             public void setVariable(Environment.Variable variable) {
                 this.variable = variable;
             }
+
+            Environment.Variable getVariableOrNull() {
+                return variable;
+            }
             
             
             @Override
@@ -509,16 +523,58 @@ public abstract class Ast {
         public static final class Literal extends Ast.Expression {
 
             private final Object literal;
+            private final boolean primitive;    // Whether the number also has its value stored in a primitive field
+            private final long longValue;
+            private final double doubleValue;
             private Environment.Type type = null;
             
             public Literal(Object literal) {
+                this(literal, false, 0, 0);
+            }
+
+            /**
+             * Creates an integer literal whose value is also known to fit in a
+             * long, such as one pre-parsed by the lexer.
+             */
+            public Literal(BigInteger literal, long value) {
+                this(literal, true, value, 0);
+            }
+
+            /**
+             * Creates a decimal literal whose nearest double is already known.
+             */
+            public Literal(BigDecimal literal, double value) {
+                this(literal, true, 0, value);
+            }
+
+            private Literal(Object literal, boolean primitive, long longValue, double doubleValue) {
                 this.literal = literal;
+                this.primitive = primitive;
+                this.longValue = longValue;
+                this.doubleValue = doubleValue;
             }
 
             public Object getLiteral() {
                 return literal;
             }
 
+            /**
+             * Returns true if this is a number with its value also available
+             * through {@link #getLongValue()} (integers) or
+             * {@link #getDoubleValue()} (decimals).
+             */
+            public boolean hasPrimitive() {
+                return primitive;
+            }
+
+            public long getLongValue() {
+                return longValue;
+            }
+
+            public double getDoubleValue() {
+                return doubleValue;
+            }
+
             @Override
             public Environment.Type getType() {
                 if (type == null) {
@@ -531,6 +587,10 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            Environment.Type getTypeOrNull() {
+                return type;
+            }
+
 
 
             @Override
@@ -575,6 +635,10 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            Environment.Type getTypeOrNull() {
+                return type;
+            }
+
 
             @Override
             public boolean equals(Object obj) {
@@ -597,12 +661,26 @@ public abstract class Ast {
         public static final class Binary extends Ast.Expression {
 
             private final String operator;
+            private final Token.Operator operatorId;
             private final Ast.Expression left;
             private final Ast.Expression right;
             private Environment.Type type = null;
 
             public Binary(String operator, Ast.Expression left, Ast.Expression right) {
+                this(operator, Token.Operator.of(operator), left, right);
+            }
+
+            /**
+             * Creates a binary expression from an operator already identified
+             * by the lexer, without looking up its symbol.
+             */
+            public Binary(Token.Operator operator, Ast.Expression left, Ast.Expression right) {
+                this(operator.getSymbol(), operator, left, right);
+            }
+
+            private Binary(String operator, Token.Operator operatorId, Ast.Expression left, Ast.Expression right) {
                 this.operator = operator;
+                this.operatorId = operatorId;
                 this.left = left;
                 this.right = right;
             }
@@ -611,6 +689,14 @@ public abstract class Ast {
                 return operator;
             }
 
+            /**
+             * Returns the operator as a {@link Token.Operator} to switch on, or
+             * {@code null} if it is not one of the operators.
+             */
+            public Token.Operator getOperatorId() {
+                return operatorId;
+            }
+
             public Ast.Expression getLeft() {
                 return left;
             }
@@ -631,6 +717,10 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            Environment.Type getTypeOrNull() {
+                return type;
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Binary &&
@@ -683,6 +773,10 @@ public abstract class Ast {
                 this.variable = variable;
             }
 
+            Environment.Variable getVariableOrNull() {
+                return variable;
+            }
+
             @Override
             public Environment.Type getType() {
                 return getVariable().getType();
@@ -738,6 +832,10 @@ public abstract class Ast {
                 this.function = function;
             }
 
+            Environment.Function getFunctionOrNull() {
+                return function;
+            }
+
             @Override
             public Environment.Type getType() {
                 return getFunction().getReturnType();
@@ -788,6 +886,10 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            Environment.Type getTypeOrNull() {
+                return type;
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Ast.Expression.PlcList &&
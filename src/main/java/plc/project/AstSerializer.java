@@ -0,0 +1,738 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A compact, versioned binary format for an {@link Ast.Source}, including the
+ * types, variables and functions attached by the {@link Analyzer}, so a tree
+ * can be loaded again without lexing, parsing and analyzing its source.
+ *
+ * The format is a header (magic number and version), a string table holding
+ * every name once, and the nodes in post-order, so the reader rebuilds the
+ * tree with a stack of finished nodes instead of recursing and any depth of
+ * nesting can be written and read. Each node is a tag byte followed by its
+ * fields, with integers as varints and strings, types and names as indices
+ * into the string table. A variable or function is written in full the first
+ * time it is referenced and by index afterwards, so nodes sharing one before
+ * writing share one after reading.
+ *
+ * Values of variables and implementations of functions only exist at
+ * runtime, so a variable is read with the value {@link Environment#NIL} and a
+ * function returning it, as the analyzer defines them. Types are written by
+ * name and read with {@link Environment#getType(String)}, so only registered
+ * types can be written.
+ */
+public final class AstSerializer {
+
+    private static final int MAGIC = 0x504C4341;    // "PLCA"
+    private static final int VERSION = 1;           // Increment whenever the layout changes
+
+    private static final byte SOURCE = 0;
+    private static final byte GLOBAL = 1;
+    private static final byte FUNCTION = 2;
+    private static final byte EXPRESSION_STATEMENT = 3;
+    private static final byte DECLARATION = 4;
+    private static final byte ASSIGNMENT = 5;
+    private static final byte IF = 6;
+    private static final byte SWITCH = 7;
+    private static final byte CASE = 8;
+    private static final byte WHILE = 9;
+    private static final byte RETURN = 10;
+    private static final byte NIL = 11;
+    private static final byte TRUE = 12;
+    private static final byte FALSE = 13;
+    private static final byte INTEGER = 14;         // An integer with a long value, see Literal#hasPrimitive()
+    private static final byte BIG_INTEGER = 15;
+    private static final byte DECIMAL = 16;         // A decimal with a double value
+    private static final byte BIG_DECIMAL = 17;
+    private static final byte CHARACTER = 18;
+    private static final byte STRING = 19;
+    private static final byte GROUP = 20;
+    private static final byte BINARY = 21;
+    private static final byte ACCESS = 22;
+    private static final byte CALL = 23;
+    private static final byte LIST = 24;
+
+    private static final int NONE = 0;          // Reference to an unset variable, function, type or name
+    private static final int DEFINITION = 1;    // Reference to a variable or function written in full after it
+
+    private AstSerializer() {}
+
+    /**
+     * Returns the serialized form of the tree.
+     */
+    public static byte[] write(Ast.Source source) {
+        return new Writer().write(source);
+    }
+
+    /**
+     * Rebuilds a tree from its serialized form, throwing an
+     * {@link IllegalArgumentException} if the bytes are not a tree written by
+     * this version of the format.
+     */
+    public static Ast.Source read(byte[] bytes) {
+        Reader reader = new Reader(bytes);
+        try {
+            if (reader.readInt() != MAGIC) {
+                throw new IllegalArgumentException("The bytes are not a serialized AST.");
+            }
+            int version = reader.readVarint();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported AST format version " + version + ".");
+            }
+            return reader.read();
+        } catch (IndexOutOfBoundsException | ClassCastException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("The serialized AST is malformed.", e);
+        }
+    }
+
+    private static final class Writer {
+
+        private final Output body = new Output();
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final List<String> table = new ArrayList<>();
+        private final Map<Environment.Variable, Integer> variables = new IdentityHashMap<>();
+        private final Map<Environment.Function, Integer> functions = new IdentityHashMap<>();
+
+        private byte[] write(Ast.Source source) {
+            AstTraversal.postOrder(source, this::writeNode);
+            Output output = new Output();
+            output.writeInt(MAGIC);
+            output.writeVarint(VERSION);
+            output.writeVarint(table.size());
+            for (String string : table) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                output.writeVarint(bytes.length);
+                output.write(bytes, 0, bytes.length);
+            }
+            output.write(body.bytes, 0, body.size);
+            return Arrays.copyOf(output.bytes, output.size);
+        }
+
+        /**
+         * Writes the fields of a node, whose children have already been
+         * written.
+         */
+        private void writeNode(Ast ast) {
+            if (ast instanceof Ast.Source) {
+                body.writeByte(SOURCE);
+                body.writeVarint(((Ast.Source) ast).getGlobals().size());
+                body.writeVarint(((Ast.Source) ast).getFunctions().size());
+            }
+            else if (ast instanceof Ast.Global) {
+                Ast.Global global = (Ast.Global) ast;
+                body.writeByte(GLOBAL);
+                writeString(global.getName());
+                writeString(global.getTypeName());
+                body.writeByte(global.getMutable() ? 1 : 0);
+                body.writeByte(global.getValue().isPresent() ? 1 : 0);
+                writeVariable(global.getVariableOrNull());
+            }
+            else if (ast instanceof Ast.Function) {
+                Ast.Function function = (Ast.Function) ast;
+                body.writeByte(FUNCTION);
+                writeString(function.getName());
+                writeStrings(function.getParameters());
+                writeStrings(function.getParameterTypeNames());
+                writeOptionalString(function.getReturnTypeName());
+                body.writeVarint(function.getStatements().size());
+                writeFunction(function.getFunctionOrNull());
+            }
+            else if (ast instanceof Ast.Statement.Expression) {
+                body.writeByte(EXPRESSION_STATEMENT);
+            }
+            else if (ast instanceof Ast.Statement.Declaration) {
+                Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) ast;
+                body.writeByte(DECLARATION);
+                writeString(declaration.getName());
+                writeOptionalString(declaration.getTypeName());
+                body.writeByte(declaration.getValue().isPresent() ? 1 : 0);
+                writeVariable(declaration.getVariableOrNull());
+            }
+            else if (ast instanceof Ast.Statement.Assignment) {
+                body.writeByte(ASSIGNMENT);
+            }
+            else if (ast instanceof Ast.Statement.If) {
+                body.writeByte(IF);
+                body.writeVarint(((Ast.Statement.If) ast).getThenStatements().size());
+                body.writeVarint(((Ast.Statement.If) ast).getElseStatements().size());
+            }
+            else if (ast instanceof Ast.Statement.Switch) {
+                body.writeByte(SWITCH);
+                body.writeVarint(((Ast.Statement.Switch) ast).getCases().size());
+            }
+            else if (ast instanceof Ast.Statement.Case) {
+                body.writeByte(CASE);
+                body.writeByte(((Ast.Statement.Case) ast).getValue().isPresent() ? 1 : 0);
+                body.writeVarint(((Ast.Statement.Case) ast).getStatements().size());
+            }
+            else if (ast instanceof Ast.Statement.While) {
+                body.writeByte(WHILE);
+                body.writeVarint(((Ast.Statement.While) ast).getStatements().size());
+            }
+            else if (ast instanceof Ast.Statement.Return) {
+                body.writeByte(RETURN);
+            }
+            else if (ast instanceof Ast.Expression.Literal) {
+                writeLiteral((Ast.Expression.Literal) ast);
+            }
+            else if (ast instanceof Ast.Expression.Group) {
+                body.writeByte(GROUP);
+                writeType(((Ast.Expression.Group) ast).getTypeOrNull());
+            }
+            else if (ast instanceof Ast.Expression.Binary) {
+                body.writeByte(BINARY);
+                writeString(((Ast.Expression.Binary) ast).getOperator());
+                writeType(((Ast.Expression.Binary) ast).getTypeOrNull());
+            }
+            else if (ast instanceof Ast.Expression.Access) {
+                Ast.Expression.Access access = (Ast.Expression.Access) ast;
+                body.writeByte(ACCESS);
+                body.writeByte(access.getOffset().isPresent() ? 1 : 0);
+                writeString(access.getName());
+                writeVariable(access.getVariableOrNull());
+            }
+            else if (ast instanceof Ast.Expression.Function) {
+                Ast.Expression.Function call = (Ast.Expression.Function) ast;
+                body.writeByte(CALL);
+                writeString(call.getName());
+                body.writeVarint(call.getArguments().size());
+                writeFunction(call.getFunctionOrNull());
+            }
+            else if (ast instanceof Ast.Expression.PlcList) {
+                body.writeByte(LIST);
+                body.writeVarint(((Ast.Expression.PlcList) ast).getValues().size());
+                writeType(((Ast.Expression.PlcList) ast).getTypeOrNull());
+            }
+            else {
+                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+            }
+        }
+
+        private void writeLiteral(Ast.Expression.Literal ast) {
+            Object literal = ast.getLiteral();
+            if (literal == null) {
+                body.writeByte(NIL);
+            }
+            else if (literal instanceof Boolean) {
+                body.writeByte((Boolean) literal ? TRUE : FALSE);
+            }
+            else if (literal instanceof BigInteger && ast.hasPrimitive()) {
+                body.writeByte(INTEGER);
+                body.writeVarlong(zigzag(ast.getLongValue()));
+            }
+            else if (literal instanceof BigInteger) {
+                body.writeByte(BIG_INTEGER);
+                writeBigInteger((BigInteger) literal);
+            }
+            else if (literal instanceof BigDecimal) {
+                body.writeByte(ast.hasPrimitive() ? DECIMAL : BIG_DECIMAL);
+                writeBigInteger(((BigDecimal) literal).unscaledValue());
+                body.writeVarint(zigzag(((BigDecimal) literal).scale()));
+                if (ast.hasPrimitive()) {
+                    body.writeLong(Double.doubleToRawLongBits(ast.getDoubleValue()));
+                }
+            }
+            else if (literal instanceof Character) {
+                body.writeByte(CHARACTER);
+                body.writeVarint((Character) literal);
+            }
+            else if (literal instanceof String) {
+                body.writeByte(STRING);
+                writeString((String) literal);
+            }
+            else {
+                throw new IllegalArgumentException("Unsupported literal " + literal + ".");
+            }
+            writeType(ast.getTypeOrNull());
+        }
+
+        private void writeBigInteger(BigInteger value) {
+            byte[] bytes = value.toByteArray();
+            body.writeVarint(bytes.length);
+            body.write(bytes, 0, bytes.length);
+        }
+
+        private void writeString(String string) {
+            body.writeVarint(index(string));
+        }
+
+        /**
+         * Writes the index of the string plus one, or {@link #NONE} if it is
+         * empty.
+         */
+        private void writeOptionalString(Optional<String> string) {
+            body.writeVarint(string.isPresent() ? index(string.get()) + 1 : NONE);
+        }
+
+        private int index(String string) {
+            Integer index = strings.get(string);
+            if (index == null) {
+                index = table.size();
+                strings.put(string, index);
+                table.add(string);
+            }
+            return index;
+        }
+
+        private void writeStrings(List<String> strings) {
+            body.writeVarint(strings.size());
+            for (String string : strings) {
+                writeString(string);
+            }
+        }
+
+        /**
+         * Writes the index of the name of the type plus one, or {@link #NONE}
+         * if it is not set.
+         */
+        private void writeType(Environment.Type type) {
+            if (type == null) {
+                body.writeVarint(NONE);
+                return;
+            }
+            if (Environment.getType(type.getName()) != type) {
+                throw new IllegalArgumentException("The type " + type.getName() + " is not registered.");
+            }
+            body.writeVarint(index(type.getName()) + 1);
+        }
+
+        private void writeVariable(Environment.Variable variable) {
+            if (variable == null) {
+                body.writeVarint(NONE);
+            }
+            else if (variables.containsKey(variable)) {
+                body.writeVarint(DEFINITION + 1 + variables.get(variable));
+            }
+            else {
+                variables.put(variable, variables.size());
+                body.writeVarint(DEFINITION);
+                writeString(variable.getName());
+                writeString(variable.getJvmName());
+                writeType(variable.getType());
+                body.writeByte(variable.getMutable() ? 1 : 0);
+            }
+        }
+
+        private void writeFunction(Environment.Function function) {
+            if (function == null) {
+                body.writeVarint(NONE);
+            }
+            else if (functions.containsKey(function)) {
+                body.writeVarint(DEFINITION + 1 + functions.get(function));
+            }
+            else {
+                functions.put(function, functions.size());
+                body.writeVarint(DEFINITION);
+                writeString(function.getName());
+                writeString(function.getJvmName());
+                body.writeVarint(function.getParameterTypes().size());
+                for (Environment.Type type : function.getParameterTypes()) {
+                    writeType(type);
+                }
+                writeType(function.getReturnType());
+            }
+        }
+
+    }
+
+    private static final class Reader {
+
+        private final byte[] bytes;
+        private int position = 0;
+        private String[] strings;
+        private Environment.Type[] types;   // Type named by each string, looked up on first use
+        private final List<Environment.Variable> variables = new ArrayList<>();
+        private final List<Environment.Function> functions = new ArrayList<>();
+        private Ast[] stack = new Ast[64];  // Nodes whose parent has not been read yet
+        private int size = 0;
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private Ast.Source read() {
+            strings = new String[readVarint()];
+            types = new Environment.Type[strings.length];
+            for (int i = 0; i < strings.length; i++) {
+                int length = readVarint();
+                checkAvailable(length);
+                strings[i] = new String(bytes, position, length, StandardCharsets.UTF_8);
+                position += length;
+            }
+            while (position < bytes.length) {
+                push(readNode());
+            }
+            if (size != 1) {
+                throw new IllegalArgumentException("The serialized AST is malformed.");
+            }
+            return (Ast.Source) stack[0];
+        }
+
+        /**
+         * Reads the fields of a node, taking its children off the stack.
+         */
+        private Ast readNode() {
+            byte tag = bytes[position++];
+            switch (tag) {
+                case SOURCE: {
+                    int globals = readVarint();
+                    int functions = readVarint();
+                    List<Ast.Function> functionNodes = pop(functions);
+                    return new Ast.Source(pop(globals), functionNodes);
+                }
+                case GLOBAL: {
+                    String name = readString();
+                    String typeName = readString();
+                    boolean mutable = bytes[position++] != 0;
+                    Optional<Ast.Expression> value = popOptional(bytes[position++] != 0);
+                    Ast.Global global = new Ast.Global(name, typeName, mutable, value);
+                    global.setVariable(readVariable());
+                    return global;
+                }
+                case FUNCTION: {
+                    String name = readString();
+                    List<String> parameters = readStrings();
+                    List<String> parameterTypeNames = readStrings();
+                    Optional<String> returnTypeName = readOptionalString();
+                    List<Ast.Statement> statements = pop(readVarint());
+                    Ast.Function function = new Ast.Function(name, parameters, parameterTypeNames, returnTypeName, statements);
+                    function.setFunction(readFunction());
+                    return function;
+                }
+                case EXPRESSION_STATEMENT:
+                    return new Ast.Statement.Expression((Ast.Expression) pop());
+                case DECLARATION: {
+                    String name = readString();
+                    Optional<String> typeName = readOptionalString();
+                    Optional<Ast.Expression> value = popOptional(bytes[position++] != 0);
+                    Ast.Statement.Declaration declaration = new Ast.Statement.Declaration(name, typeName, value);
+                    declaration.setVariable(readVariable());
+                    return declaration;
+                }
+                case ASSIGNMENT: {
+                    Ast.Expression value = (Ast.Expression) pop();
+                    return new Ast.Statement.Assignment((Ast.Expression) pop(), value);
+                }
+                case IF: {
+                    int thenCount = readVarint();
+                    List<Ast.Statement> elseStatements = pop(readVarint());
+                    List<Ast.Statement> thenStatements = pop(thenCount);
+                    return new Ast.Statement.If((Ast.Expression) pop(), thenStatements, elseStatements);
+                }
+                case SWITCH: {
+                    List<Ast.Statement.Case> cases = pop(readVarint());
+                    return new Ast.Statement.Switch((Ast.Expression) pop(), cases);
+                }
+                case CASE: {
+                    boolean value = bytes[position++] != 0;
+                    List<Ast.Statement> statements = pop(readVarint());
+                    return new Ast.Statement.Case(popOptional(value), statements);
+                }
+                case WHILE: {
+                    List<Ast.Statement> statements = pop(readVarint());
+                    return new Ast.Statement.While((Ast.Expression) pop(), statements);
+                }
+                case RETURN:
+                    return new Ast.Statement.Return((Ast.Expression) pop());
+                case GROUP: {
+                    Ast.Expression.Group group = new Ast.Expression.Group((Ast.Expression) pop());
+                    group.setType(readType());
+                    return group;
+                }
+                case BINARY: {
+                    String operator = readString();
+                    Ast.Expression right = (Ast.Expression) pop();
+                    Ast.Expression.Binary binary = new Ast.Expression.Binary(operator, (Ast.Expression) pop(), right);
+                    binary.setType(readType());
+                    return binary;
+                }
+                case ACCESS: {
+                    Optional<Ast.Expression> offset = popOptional(bytes[position++] != 0);
+                    Ast.Expression.Access access = new Ast.Expression.Access(offset, readString());
+                    access.setVariable(readVariable());
+                    return access;
+                }
+                case CALL: {
+                    String name = readString();
+                    Ast.Expression.Function call = new Ast.Expression.Function(name, pop(readVarint()));
+                    call.setFunction(readFunction());
+                    return call;
+                }
+                case LIST: {
+                    Ast.Expression.PlcList list = new Ast.Expression.PlcList(pop(readVarint()));
+                    list.setType(readType());
+                    return list;
+                }
+                default: {
+                    Ast.Expression.Literal literal = readLiteral(tag);
+                    literal.setType(readType());
+                    return literal;
+                }
+            }
+        }
+
+        private Ast.Expression.Literal readLiteral(byte tag) {
+            switch (tag) {
+                case NIL:
+                    return new Ast.Expression.Literal(null);
+                case TRUE:
+                    return new Ast.Expression.Literal(Boolean.TRUE);
+                case FALSE:
+                    return new Ast.Expression.Literal(Boolean.FALSE);
+                case INTEGER: {
+                    long value = unzigzag(readVarlong());
+                    return new Ast.Expression.Literal(BigInteger.valueOf(value), value);
+                }
+                case BIG_INTEGER:
+                    return new Ast.Expression.Literal(readBigInteger());
+                case DECIMAL: {
+                    BigDecimal value = new BigDecimal(readBigInteger(), (int) unzigzag(readVarint()));
+                    return new Ast.Expression.Literal(value, Double.longBitsToDouble(readLong()));
+                }
+                case BIG_DECIMAL:
+                    return new Ast.Expression.Literal(new BigDecimal(readBigInteger(), (int) unzigzag(readVarint())));
+                case CHARACTER:
+                    return new Ast.Expression.Literal((char) readVarint());
+                case STRING:
+                    return new Ast.Expression.Literal(readString());
+                default:
+                    throw new IllegalArgumentException("Unknown AST node tag " + tag + ".");
+            }
+        }
+
+        private BigInteger readBigInteger() {
+            int length = readVarint();
+            checkAvailable(length);
+            BigInteger value = new BigInteger(bytes, position, length);
+            position += length;
+            return value;
+        }
+
+        private String readString() {
+            return strings[readVarint()];
+        }
+
+        private Optional<String> readOptionalString() {
+            int reference = readVarint();
+            return reference == NONE ? Optional.empty() : Optional.of(strings[reference - 1]);
+        }
+
+        private List<String> readStrings() {
+            int count = readVarint();
+            List<String> strings = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                strings.add(readString());
+            }
+            return strings;
+        }
+
+        private Environment.Type readType() {
+            int reference = readVarint();
+            if (reference == NONE) {
+                return null;
+            }
+            int index = reference - 1;
+            if (types[index] == null) {
+                types[index] = Environment.getType(strings[index]);
+            }
+            return types[index];
+        }
+
+        private Environment.Variable readVariable() {
+            int reference = readVarint();
+            if (reference == NONE) {
+                return null;
+            }
+            else if (reference > DEFINITION) {
+                return variables.get(reference - DEFINITION - 1);
+            }
+            String name = readString();
+            String jvmName = readString();
+            Environment.Type type = readType();
+            Environment.Variable variable = new Environment.Variable(name, jvmName, type, bytes[position++] != 0, Environment.NIL);
+            variables.add(variable);
+            return variable;
+        }
+
+        private Environment.Function readFunction() {
+            int reference = readVarint();
+            if (reference == NONE) {
+                return null;
+            }
+            else if (reference > DEFINITION) {
+                return functions.get(reference - DEFINITION - 1);
+            }
+            String name = readString();
+            String jvmName = readString();
+            int arity = readVarint();
+            List<Environment.Type> parameterTypes = new ArrayList<>(arity);
+            for (int i = 0; i < arity; i++) {
+                parameterTypes.add(readType());
+            }
+            Environment.Function function = new Environment.Function(name, jvmName, parameterTypes, readType(), args -> Environment.NIL);
+            functions.add(function);
+            return function;
+        }
+
+        private void push(Ast ast) {
+            if (size == stack.length) {
+                stack = Arrays.copyOf(stack, size * 2);
+            }
+            stack[size++] = ast;
+        }
+
+        private Ast pop() {
+            if (size == 0) {
+                throw new IllegalArgumentException("The serialized AST is malformed.");
+            }
+            Ast ast = stack[--size];
+            stack[size] = null;
+            return ast;
+        }
+
+        private <T extends Ast> Optional<T> popOptional(boolean present) {
+            return present ? Optional.of(this.<T>popUnchecked()) : Optional.empty();
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T extends Ast> T popUnchecked() {
+            return (T) pop();
+        }
+
+        /**
+         * Takes the given number of nodes off the stack as a list, in the
+         * order they were pushed.
+         */
+        @SuppressWarnings("unchecked")
+        private <T extends Ast> List<T> pop(int count) {
+            if (count > size) {
+                throw new IllegalArgumentException("The serialized AST is malformed.");
+            }
+            List<T> list = new ArrayList<>(count);
+            for (int i = size - count; i < size; i++) {
+                list.add((T) stack[i]);
+                stack[i] = null;
+            }
+            size -= count;
+            return list;
+        }
+
+        private void checkAvailable(int length) {
+            if (length < 0 || length > bytes.length - position) {
+                throw new IllegalArgumentException("The serialized AST is truncated.");
+            }
+        }
+
+        private int readInt() {
+            checkAvailable(Integer.BYTES);
+            int value = 0;
+            for (int i = 0; i < Integer.BYTES; i++) {
+                value |= (bytes[position++] & 0xFF) << (8 * i);
+            }
+            return value;
+        }
+
+        private long readLong() {
+            checkAvailable(Long.BYTES);
+            long value = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                value |= (bytes[position++] & 0xFFL) << (8 * i);
+            }
+            return value;
+        }
+
+        private int readVarint() {
+            return (int) readVarlong();
+        }
+
+        private long readVarlong() {
+            long value = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += 7) {
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("The serialized AST is malformed.");
+        }
+
+    }
+
+    /**
+     * A growable byte array written in little-endian order.
+     */
+    private static final class Output {
+
+        private byte[] bytes = new byte[256];
+        private int size = 0;
+
+        private void ensure(int count) {
+            if (size + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + count));
+            }
+        }
+
+        private void writeByte(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        private void write(byte[] source, int offset, int length) {
+            ensure(length);
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+
+        private void writeInt(int value) {
+            ensure(Integer.BYTES);
+            for (int i = 0; i < Integer.BYTES; i++) {
+                bytes[size++] = (byte) (value >>> (8 * i));
+            }
+        }
+
+        private void writeLong(long value) {
+            ensure(Long.BYTES);
+            for (int i = 0; i < Long.BYTES; i++) {
+                bytes[size++] = (byte) (value >>> (8 * i));
+            }
+        }
+
+        private void writeVarint(int value) {
+            writeVarlong(value & 0xFFFFFFFFL);
+        }
+
+        private void writeVarlong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
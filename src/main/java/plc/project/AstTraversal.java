@@ -0,0 +1,144 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Traverses an AST without recursion, keeping the path to the current node on
+ * a stack on the heap, so trees of any depth (such as those parsed by
+ * {@link Parser#parseSourceIterative()}) can be processed without a
+ * {@link StackOverflowError}.
+ *
+ * Each node is passed to an {@link Ast.Visitor}, which should handle only
+ * that node rather than visiting its children itself, since the traversal
+ * already visits them. Children are visited in source order, as returned by
+ * {@link #children(Ast)}.
+ */
+public final class AstTraversal {
+
+    private AstTraversal() {}
+
+    /**
+     * Visits every node of the tree, each node before its children.
+     */
+    public static void preOrder(Ast root, Ast.Visitor<?> visitor) {
+        preOrder(root, (Consumer<Ast>) visitor::visit);
+    }
+
+    public static void preOrder(Ast root, Consumer<? super Ast> action) {
+        Deque<Iterator<Ast>> stack = new ArrayDeque<>();    // Children left to visit at each level of the path
+        action.accept(root);
+        stack.push(children(root).iterator());
+        while (!stack.isEmpty()) {
+            Iterator<Ast> children = stack.peek();
+            if (children.hasNext()) {
+                Ast child = children.next();
+                action.accept(child);
+                stack.push(children(child).iterator());
+            }
+            else {
+                stack.pop();
+            }
+        }
+    }
+
+    /**
+     * Visits every node of the tree, each node after its children, which is
+     * the order to compute something about a node from its children in.
+     */
+    public static void postOrder(Ast root, Ast.Visitor<?> visitor) {
+        postOrder(root, (Consumer<Ast>) visitor::visit);
+    }
+
+    public static void postOrder(Ast root, Consumer<? super Ast> action) {
+        Deque<Ast> path = new ArrayDeque<>();
+        Deque<Iterator<Ast>> stack = new ArrayDeque<>();
+        path.push(root);
+        stack.push(children(root).iterator());
+        while (!stack.isEmpty()) {
+            Iterator<Ast> children = stack.peek();
+            if (children.hasNext()) {
+                Ast child = children.next();
+                path.push(child);
+                stack.push(children(child).iterator());
+            }
+            else {
+                stack.pop();
+                action.accept(path.pop());
+            }
+        }
+    }
+
+    /**
+     * Returns the children of the node in source order.
+     */
+    public static List<Ast> children(Ast ast) {
+        List<Ast> children = new ArrayList<>();
+        if (ast instanceof Ast.Source) {
+            children.addAll(((Ast.Source) ast).getGlobals());
+            children.addAll(((Ast.Source) ast).getFunctions());
+        }
+        else if (ast instanceof Ast.Global) {
+            ((Ast.Global) ast).getValue().ifPresent(children::add);
+        }
+        else if (ast instanceof Ast.Function) {
+            children.addAll(((Ast.Function) ast).getStatements());
+        }
+        else if (ast instanceof Ast.Statement.Expression) {
+            children.add(((Ast.Statement.Expression) ast).getExpression());
+        }
+        else if (ast instanceof Ast.Statement.Declaration) {
+            ((Ast.Statement.Declaration) ast).getValue().ifPresent(children::add);
+        }
+        else if (ast instanceof Ast.Statement.Assignment) {
+            children.add(((Ast.Statement.Assignment) ast).getReceiver());
+            children.add(((Ast.Statement.Assignment) ast).getValue());
+        }
+        else if (ast instanceof Ast.Statement.If) {
+            children.add(((Ast.Statement.If) ast).getCondition());
+            children.addAll(((Ast.Statement.If) ast).getThenStatements());
+            children.addAll(((Ast.Statement.If) ast).getElseStatements());
+        }
+        else if (ast instanceof Ast.Statement.Switch) {
+            children.add(((Ast.Statement.Switch) ast).getCondition());
+            children.addAll(((Ast.Statement.Switch) ast).getCases());
+        }
+        else if (ast instanceof Ast.Statement.Case) {
+            ((Ast.Statement.Case) ast).getValue().ifPresent(children::add);
+            children.addAll(((Ast.Statement.Case) ast).getStatements());
+        }
+        else if (ast instanceof Ast.Statement.While) {
+            children.add(((Ast.Statement.While) ast).getCondition());
+            children.addAll(((Ast.Statement.While) ast).getStatements());
+        }
+        else if (ast instanceof Ast.Statement.Return) {
+            children.add(((Ast.Statement.Return) ast).getValue());
+        }
+        else if (ast instanceof Ast.Expression.Group) {
+            children.add(((Ast.Expression.Group) ast).getExpression());
+        }
+        else if (ast instanceof Ast.Expression.Binary) {
+            children.add(((Ast.Expression.Binary) ast).getLeft());
+            children.add(((Ast.Expression.Binary) ast).getRight());
+        }
+        else if (ast instanceof Ast.Expression.Access) {
+            ((Ast.Expression.Access) ast).getOffset().ifPresent(children::add);
+        }
+        else if (ast instanceof Ast.Expression.Function) {
+            children.addAll(((Ast.Expression.Function) ast).getArguments());
+        }
+        else if (ast instanceof Ast.Expression.PlcList) {
+            children.addAll(((Ast.Expression.PlcList) ast).getValues());
+        }
+        else if (!(ast instanceof Ast.Expression.Literal)) {
+            throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+        }
+        return children.isEmpty() ? Collections.emptyList() : children;
+    }
+
+}
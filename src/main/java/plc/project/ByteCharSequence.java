@@ -0,0 +1,169 @@
+package plc.project;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A {@link CharSequence} view over ASCII/UTF-8 encoded bytes which maps every
+ * byte to one char, so indices into the sequence are byte offsets into the
+ * buffer. This lets the {@link Lexer} scan a (possibly memory-mapped) buffer
+ * without decoding it into a String first.
+ *
+ * Bytes outside of ASCII only appear inside literals, where the lexer does
+ * not care about their value beyond the length of a character's sequence.
+ * {@link #toString()} decodes the bytes as UTF-8, so literals materialized
+ * from the view have the correct characters.
+ * Since only the lexer's literals ever need decoding, the rest of the input
+ * is never copied into UTF-16. Offsets can still be converted into the char
+ * indices of the decoded input with {@link #charIndex(int)}.
+ */
+public final class ByteCharSequence implements CharSequence {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+    // Index after each non-ASCII byte and the bytes - chars up to it, built on demand:
+    private volatile int[][] shifts;
+
+    /**
+     * Creates a view over the whole buffer, from index 0 to its limit.
+     */
+    public ByteCharSequence(ByteBuffer buffer) {
+        this(buffer, 0, buffer.limit());
+    }
+
+    private ByteCharSequence(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for length " + length);
+        }
+        return (char) (buffer.get(offset + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") is out of bounds for length "
+                    + length);
+        }
+        return new ByteCharSequence(buffer, offset + start, end - start);
+    }
+
+    /**
+     * Returns a little-endian view of the underlying buffer, for reading the
+     * bytes a word at a time with {@link Swar}. Index i of this sequence is at
+     * {@link #getOffset()} + i in the buffer.
+     */
+    ByteBuffer getBuffer() {
+        return buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the number of bytes in the UTF-8 sequence starting with the
+     * given lead byte, or 1 if it is not the lead byte of a sequence.
+     */
+    static int sequenceLength(char lead) {
+        if (lead >= 0xF0 && lead < 0xF8) {
+            return 4;
+        }
+        else if (lead >= 0xE0 && lead < 0xF0) {
+            return 3;
+        }
+        else if (lead >= 0xC0 && lead < 0xE0) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * Converts a byte offset into the view into the index of the same
+     * character in the decoded string. An offset inside a character's
+     * sequence (which a {@link ParseException} inside a character literal
+     * can have) is converted to that character, except that past the lead
+     * byte of a 4 byte sequence it is the second char of the surrogate pair,
+     * where lexing the decoded string fails. Offsets past the end (which a
+     * {@link ParseException} at the end of the input can have) are shifted in
+     * the same way as the end. The first call scans the view for non-ASCII
+     * bytes and later calls are a binary search over them.
+     */
+    public int charIndex(int index) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Index " + index + " is negative");
+        }
+        int[][] shifts = this.shifts;
+        if (shifts == null) {
+            this.shifts = shifts = scanShifts();
+        }
+        int position = Arrays.binarySearch(shifts[0], index);
+        int count = position >= 0 ? position + 1 : -position - 1;     // Number of non-ASCII bytes before the index
+        return count == 0 ? index : index - shifts[1][count - 1];
+    }
+
+    /**
+     * Finds how many more bytes than chars there are up to each non-ASCII
+     * byte. A sequence of n bytes decodes to one char, or to a surrogate pair
+     * if n is 4, which is only reached after its last byte. A byte which is
+     * not part of a sequence decodes to one replacement char.
+     */
+    private int[][] scanShifts() {
+        int[] ends = new int[0];
+        int[] shifts = new int[0];
+        int size = 0;
+        int shift = 0;
+        int lead = 0;       // Start, length and shift before the last sequence
+        int sequence = 0;
+        int before = 0;
+        for (int i = 0; i < length; i++) {
+            int b = buffer.get(offset + i) & 0xFF;
+            if (b < 0x80) {
+                continue;
+            }
+            if ((b & 0xC0) != 0x80 || i >= lead + sequence) {
+                lead = i;
+                sequence = sequenceLength((char) b);
+                before = shift;
+            }
+            int bytes = i + 1 - lead;   // Bytes of the sequence up to this one
+            if (sequence < 4) {
+                shift = before + bytes - (bytes < sequence ? 0 : 1);
+            }
+            else {
+                shift = before + bytes - (bytes < sequence ? 1 : 2);
+            }
+            if (size == ends.length) {
+                ends = Arrays.copyOf(ends, Math.max(16, size * 2));
+                shifts = Arrays.copyOf(shifts, ends.length);
+            }
+            ends[size] = i + 1;
+            shifts[size] = shift;
+            size++;
+        }
+        return new int[][] {Arrays.copyOf(ends, size), Arrays.copyOf(shifts, size)};
+    }
+
+    @Override
+    public String toString() {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice.limit(offset + length);
+        return StandardCharsets.UTF_8.decode(slice).toString();
+    }
+
+}
@@ -0,0 +1,60 @@
+package plc.project;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A single-character regex class (such as {@code [A-Za-z@]}) precompiled into
+ * a lookup table, so the lexer can classify characters without allocating a
+ * String or running the regex engine for every character.
+ *
+ * The table covers ASCII; any other character falls back to the compiled
+ * {@link Pattern}, which keeps the semantics identical to calling
+ * {@code String.valueOf(c).matches(regex)}.
+ */
+public final class CharClass {
+
+    private static final int TABLE_SIZE = 128;
+    private static final Map<String, CharClass> CACHE = new HashMap<>();
+
+    public static final CharClass WHITESPACE = compile("[\\s\b]");
+    public static final CharClass IDENTIFIER_START = compile("[A-Za-z@]");
+    public static final CharClass IDENTIFIER_PART = compile("[A-Za-z0-9_-]");
+    public static final CharClass NUMBER_START = compile("[0-9-]");
+    public static final CharClass DIGIT = compile("[0-9]");
+    public static final CharClass ESCAPE = compile("[bnrt'\\\\\"]");
+
+    private final Pattern pattern;
+    private final boolean[] table = new boolean[TABLE_SIZE];
+
+    private CharClass(String regex) {
+        pattern = Pattern.compile(regex);
+        for (char c = 0; c < TABLE_SIZE; c++) {    // Evaluate the regex once per ASCII character
+            table[c] = pattern.matcher(String.valueOf(c)).matches();
+        }
+    }
+
+    /**
+     * Returns the character class for the given regex, compiling it on first
+     * use and reusing the same table afterwards.
+     */
+    public static CharClass compile(String regex) {
+        synchronized (CACHE) {
+            return CACHE.computeIfAbsent(regex, CharClass::new);
+        }
+    }
+
+    public boolean matches(char c) {
+        if (c < TABLE_SIZE) {
+            return table[c];
+        }
+        return pattern.matcher(String.valueOf(c)).matches();   // Non-ASCII characters are rare, use the regex directly
+    }
+
+    @Override
+    public String toString() {
+        return pattern.pattern();
+    }
+
+}
@@ -0,0 +1,796 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An AST stored as parallel arrays instead of one object per node, which is
+ * compact and cheap to walk, read through a {@link Cursor}.
+ *
+ * Nodes are numbered in pre-order, so the root is node 0 and every subtree is
+ * a contiguous range of nodes. For each node the arrays hold its {@link Kind},
+ * its first child and next sibling (or -1), the index of its fields in a
+ * shared pool of ints, and its offset in the source (or -1 if unknown). Names,
+ * literals and the types, variables and functions attached by the
+ * {@link Analyzer} are kept once each in a table of constants referenced from
+ * the pool, so nodes sharing one before conversion share one after it.
+ *
+ * Optional children are stored only when present, so a global, declaration or
+ * access has a value or offset exactly when it has a child. Both conversions
+ * work without recursion, so a tree of any depth can be converted.
+ */
+public final class FlatAst {
+
+    public enum Kind {
+        SOURCE,
+        GLOBAL,
+        FUNCTION,
+        EXPRESSION_STATEMENT,
+        DECLARATION,
+        ASSIGNMENT,
+        IF,
+        SWITCH,
+        CASE,
+        WHILE,
+        RETURN,
+        LITERAL,
+        GROUP,
+        BINARY,
+        ACCESS,
+        CALL,
+        LIST
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final Token.Operator[] OPERATORS = Token.Operator.values();
+    private static final int NONE = -1;     // No child, sibling, offset or constant
+
+    // Layout of the fields of each kind in the pool, relative to its payload index:
+    private static final int NAME = 0;              // Global, function, declaration, access and call
+    private static final int TYPE = 0;              // Literal, group, binary and list
+    private static final int COUNT = 0;             // Globals of a source, then statements of an if, value of a case
+    private static final int TYPE_NAME = 1;         // Global, declaration, and return type of a function
+    private static final int GLOBAL_MUTABLE = 2;
+    private static final int GLOBAL_VARIABLE = 3;
+    private static final int FUNCTION_FUNCTION = 2;
+    private static final int FUNCTION_PARAMETERS = 3;   // Number of parameters, followed by each name and type name
+    private static final int DECLARATION_VARIABLE = 2;
+    private static final int LITERAL_VALUE = 1;
+    private static final int LITERAL_PRIMITIVE = 2;     // Whether the next two ints are the bits of its long or double
+    private static final int BINARY_OPERATOR = 1;
+    private static final int BINARY_OPERATOR_ID = 2;    // Ordinal of its Token.Operator
+    private static final int ACCESS_VARIABLE = 1;
+    private static final int CALL_FUNCTION = 1;
+
+    private final byte[] kinds;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int[] payload;
+    private final int[] offset;
+    private final int[] data;
+    private final Object[] constants;
+
+    private FlatAst(byte[] kinds, int[] firstChild, int[] nextSibling, int[] payload, int[] offset, int[] data, Object[] constants) {
+        this.kinds = kinds;
+        this.firstChild = firstChild;
+        this.nextSibling = nextSibling;
+        this.payload = payload;
+        this.offset = offset;
+        this.data = data;
+        this.constants = constants;
+    }
+
+    /**
+     * Converts the tree, with every offset unknown since the AST does not
+     * record positions.
+     */
+    public static FlatAst of(Ast.Source source) {
+        return of(source, new int[0]);
+    }
+
+    /**
+     * Converts the tree of a parsed source, with the offsets of its top-level
+     * nodes set to the index of their first token.
+     */
+    public static FlatAst of(ParsedSource source) {
+        int[] offsets = new int[source.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = source.getTokens().getIndex(source.getStart(i));
+        }
+        return of(source.getAst(), offsets);
+    }
+
+    /**
+     * Converts the tree with the given offsets of its first top-level nodes,
+     * counting the globals followed by the functions.
+     */
+    static FlatAst of(Ast.Source source, int[] offsets) {
+        Builder builder = new Builder();
+        Deque<Iterator<Ast>> stack = new ArrayDeque<>();
+        int[] parents = new int[16];    // Node at each level of the path, and the last child added to it
+        int[] lasts = new int[16];
+        parents[0] = builder.add(source, NONE, NONE);
+        lasts[0] = NONE;
+        stack.push(AstTraversal.children(source).iterator());
+        while (!stack.isEmpty()) {
+            Iterator<Ast> children = stack.peek();
+            int depth = stack.size() - 1;
+            if (children.hasNext()) {
+                Ast child = children.next();
+                int node = builder.add(child, parents[depth], lasts[depth]);
+                if (depth == 0 && builder.topLevel < offsets.length) {
+                    builder.offset[node] = offsets[builder.topLevel++];
+                }
+                lasts[depth] = node;
+                if (depth + 1 == parents.length) {
+                    parents = Arrays.copyOf(parents, parents.length * 2);
+                    lasts = Arrays.copyOf(lasts, lasts.length * 2);
+                }
+                parents[depth + 1] = node;
+                lasts[depth + 1] = NONE;
+                stack.push(AstTraversal.children(child).iterator());
+            }
+            else {
+                stack.pop();
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of nodes.
+     */
+    public int size() {
+        return kinds.length;
+    }
+
+    /**
+     * Returns a cursor at the root.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns a copy of the tree sharing its structure, with the types,
+     * variables and functions at the index of each node attached to it in
+     * place of its own. A {@code null} entry keeps the node's attachment.
+     */
+    FlatAst attach(Object[] attachments) {
+        int[] data = this.data.clone();
+        List<Object> constants = new ArrayList<>(Arrays.asList(this.constants));
+        Map<Object, Integer> indices = new IdentityHashMap<>();
+        for (int node = 0; node < attachments.length; node++) {
+            if (attachments[node] != null) {
+                data[attachment(node)] = indices.computeIfAbsent(attachments[node], attachment -> {
+                    constants.add(attachment);
+                    return constants.size() - 1;
+                });
+            }
+        }
+        return new FlatAst(kinds, firstChild, nextSibling, payload, offset, data, constants.toArray());
+    }
+
+    /**
+     * Returns the index in the pool of the type, variable or function of a
+     * node.
+     */
+    private int attachment(int node) {
+        switch (KINDS[kinds[node]]) {
+            case GLOBAL:
+                return payload[node] + GLOBAL_VARIABLE;
+            case FUNCTION:
+                return payload[node] + FUNCTION_FUNCTION;
+            case DECLARATION:
+                return payload[node] + DECLARATION_VARIABLE;
+            case LITERAL:
+            case GROUP:
+            case BINARY:
+            case LIST:
+                return payload[node] + TYPE;
+            case ACCESS:
+                return payload[node] + ACCESS_VARIABLE;
+            case CALL:
+                return payload[node] + CALL_FUNCTION;
+            default:
+                throw new IllegalArgumentException("A node of kind " + KINDS[kinds[node]] + " has nothing attached.");
+        }
+    }
+
+    /**
+     * Converts the whole tree back to an equal {@link Ast.Source}.
+     */
+    public Ast.Source toAst() {
+        return (Ast.Source) toAst(0);
+    }
+
+    /**
+     * Builds the subtree of a node. Every child has a higher number than its
+     * parent, so building the nodes of the subtree from last to first finds
+     * the children of each node already built.
+     */
+    private Ast toAst(int root) {
+        int end = root;     // Last node of the subtree
+        for (int node = root; firstChild[node] != NONE; ) {
+            node = firstChild[node];
+            while (nextSibling[node] != NONE) {
+                node = nextSibling[node];
+            }
+            end = node;
+        }
+        Ast[] built = new Ast[end - root + 1];
+        List<Ast> children = new ArrayList<>();
+        for (int node = end; node >= root; node--) {
+            children.clear();
+            for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                children.add(built[child - root]);
+                built[child - root] = null;     // Release children as soon as they are attached
+            }
+            built[node - root] = build(node, children);
+        }
+        return built[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    private Ast build(int node, List<Ast> children) {
+        int fields = payload[node];
+        switch (KINDS[kinds[node]]) {
+            case SOURCE: {
+                int globals = data[fields + COUNT];
+                return new Ast.Source(new ArrayList<>((List<Ast.Global>) (List<?>) children.subList(0, globals)),
+                        new ArrayList<>((List<Ast.Function>) (List<?>) children.subList(globals, children.size())));
+            }
+            case GLOBAL: {
+                Ast.Global global = new Ast.Global(string(fields + NAME), string(fields + TYPE_NAME), data[fields + GLOBAL_MUTABLE] != 0, optional(children, 0));
+                if (data[fields + GLOBAL_VARIABLE] != NONE) {
+                    global.setVariable((Environment.Variable) constants[data[fields + GLOBAL_VARIABLE]]);
+                }
+                return global;
+            }
+            case FUNCTION: {
+                List<String> parameters = new ArrayList<>();
+                List<String> parameterTypeNames = new ArrayList<>();
+                for (int i = 0; i < data[fields + FUNCTION_PARAMETERS]; i++) {
+                    parameters.add(string(fields + FUNCTION_PARAMETERS + 1 + 2 * i));
+                    parameterTypeNames.add(string(fields + FUNCTION_PARAMETERS + 2 + 2 * i));
+                }
+                Ast.Function function = new Ast.Function(string(fields + NAME), parameters, parameterTypeNames,
+                        Optional.ofNullable(string(fields + TYPE_NAME)), statements(children, 0, children.size()));
+                if (data[fields + FUNCTION_FUNCTION] != NONE) {
+                    function.setFunction((Environment.Function) constants[data[fields + FUNCTION_FUNCTION]]);
+                }
+                return function;
+            }
+            case EXPRESSION_STATEMENT:
+                return new Ast.Statement.Expression((Ast.Expression) children.get(0));
+            case DECLARATION: {
+                Ast.Statement.Declaration declaration = new Ast.Statement.Declaration(string(fields + NAME),
+                        Optional.ofNullable(string(fields + TYPE_NAME)), optional(children, 0));
+                if (data[fields + DECLARATION_VARIABLE] != NONE) {
+                    declaration.setVariable((Environment.Variable) constants[data[fields + DECLARATION_VARIABLE]]);
+                }
+                return declaration;
+            }
+            case ASSIGNMENT:
+                return new Ast.Statement.Assignment((Ast.Expression) children.get(0), (Ast.Expression) children.get(1));
+            case IF: {
+                int then = 1 + data[fields + COUNT];
+                return new Ast.Statement.If((Ast.Expression) children.get(0), statements(children, 1, then), statements(children, then, children.size()));
+            }
+            case SWITCH: {
+                List<Ast.Statement.Case> cases = new ArrayList<>();
+                for (int i = 1; i < children.size(); i++) {
+                    cases.add((Ast.Statement.Case) children.get(i));
+                }
+                return new Ast.Statement.Switch((Ast.Expression) children.get(0), cases);
+            }
+            case CASE: {
+                int value = data[fields + COUNT];
+                return new Ast.Statement.Case(value == 0 ? Optional.empty() : Optional.of((Ast.Expression) children.get(0)),
+                        statements(children, value, children.size()));
+            }
+            case WHILE:
+                return new Ast.Statement.While((Ast.Expression) children.get(0), statements(children, 1, children.size()));
+            case RETURN:
+                return new Ast.Statement.Return((Ast.Expression) children.get(0));
+            case LITERAL:
+                return buildLiteral(fields);
+            case GROUP: {
+                Ast.Expression.Group group = new Ast.Expression.Group((Ast.Expression) children.get(0));
+                group.setType(type(fields + TYPE));
+                return group;
+            }
+            case BINARY: {
+                Ast.Expression.Binary binary = new Ast.Expression.Binary(string(fields + BINARY_OPERATOR), (Ast.Expression) children.get(0), (Ast.Expression) children.get(1));
+                binary.setType(type(fields + TYPE));
+                return binary;
+            }
+            case ACCESS: {
+                Ast.Expression.Access access = new Ast.Expression.Access(optional(children, 0), string(fields + NAME));
+                if (data[fields + ACCESS_VARIABLE] != NONE) {
+                    access.setVariable((Environment.Variable) constants[data[fields + ACCESS_VARIABLE]]);
+                }
+                return access;
+            }
+            case CALL: {
+                Ast.Expression.Function call = new Ast.Expression.Function(string(fields + NAME), expressions(children));
+                if (data[fields + CALL_FUNCTION] != NONE) {
+                    call.setFunction((Environment.Function) constants[data[fields + CALL_FUNCTION]]);
+                }
+                return call;
+            }
+            case LIST: {
+                Ast.Expression.PlcList list = new Ast.Expression.PlcList(expressions(children));
+                list.setType(type(fields + TYPE));
+                return list;
+            }
+            default:
+                throw new AssertionError("Unimplemented node kind: " + KINDS[kinds[node]] + ".");
+        }
+    }
+
+    private Ast.Expression.Literal buildLiteral(int fields) {
+        Object value = constants[data[fields + LITERAL_VALUE]];
+        Ast.Expression.Literal literal;
+        if (data[fields + LITERAL_PRIMITIVE] != 0) {
+            long bits = ((long) data[fields + LITERAL_PRIMITIVE + 1] << 32) | (data[fields + LITERAL_PRIMITIVE + 2] & 0xFFFFFFFFL);
+            literal = value instanceof BigInteger
+                    ? new Ast.Expression.Literal((BigInteger) value, bits)
+                    : new Ast.Expression.Literal((BigDecimal) value, Double.longBitsToDouble(bits));
+        }
+        else {
+            literal = new Ast.Expression.Literal(value == Builder.NULL ? null : value);
+        }
+        literal.setType(type(fields + TYPE));
+        return literal;
+    }
+
+    private String string(int field) {
+        return data[field] == NONE ? null : (String) constants[data[field]];
+    }
+
+    private Environment.Type type(int field) {
+        return data[field] == NONE ? null : (Environment.Type) constants[data[field]];
+    }
+
+    private static Optional<Ast.Expression> optional(List<Ast> children, int index) {
+        return index < children.size() ? Optional.of((Ast.Expression) children.get(index)) : Optional.empty();
+    }
+
+    private static List<Ast.Statement> statements(List<Ast> children, int from, int to) {
+        List<Ast.Statement> statements = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            statements.add((Ast.Statement) children.get(i));
+        }
+        return statements;
+    }
+
+    private static List<Ast.Expression> expressions(List<Ast> children) {
+        List<Ast.Expression> expressions = new ArrayList<>();
+        for (Ast child : children) {
+            expressions.add((Ast.Expression) child);
+        }
+        return expressions;
+    }
+
+    /**
+     * A read-only position in the tree, which moves between a node, its
+     * children and its siblings and reads the fields of the node it is at.
+     * Reading a field the node does not have throws an
+     * {@link IllegalStateException}, while the types, variables and functions
+     * of an unanalyzed tree are {@code null}.
+     */
+    public final class Cursor {
+
+        private int node = 0;
+        private int[] path = new int[16];   // Ancestors of the node, from the root
+        private int depth = 0;
+
+        private Cursor() {}
+
+        /**
+         * Returns a cursor at the same node, which moves independently of
+         * this one.
+         */
+        public Cursor copy() {
+            Cursor copy = new Cursor();
+            copy.node = node;
+            copy.path = Arrays.copyOf(path, Math.max(depth, 1));
+            copy.depth = depth;
+            return copy;
+        }
+
+        /**
+         * Returns the number of the node, which is its position in pre-order.
+         */
+        public int node() {
+            return node;
+        }
+
+        public Kind kind() {
+            return KINDS[kinds[node]];
+        }
+
+        /**
+         * Returns the offset of the node in the source, or -1 if it is unknown.
+         */
+        public int offset() {
+            return offset[node];
+        }
+
+        public int depth() {
+            return depth;
+        }
+
+        /**
+         * Moves to the first child of the node, returning false and staying at
+         * the node if it has none.
+         */
+        public boolean gotoFirstChild() {
+            if (firstChild[node] == NONE) {
+                return false;
+            }
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, path.length * 2);
+            }
+            path[depth++] = node;
+            node = firstChild[node];
+            return true;
+        }
+
+        /**
+         * Moves to the next sibling of the node, returning false and staying at
+         * the node if it is the last child.
+         */
+        public boolean gotoNextSibling() {
+            if (nextSibling[node] == NONE) {
+                return false;
+            }
+            node = nextSibling[node];
+            return true;
+        }
+
+        /**
+         * Moves to the parent of the node, returning false at the root.
+         */
+        public boolean gotoParent() {
+            if (depth == 0) {
+                return false;
+            }
+            node = path[--depth];
+            return true;
+        }
+
+        public int getChildCount() {
+            int count = 0;
+            for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Returns the number of globals of a source, which are followed by its
+         * functions.
+         */
+        public int getGlobalCount() {
+            return data[field(COUNT, Kind.SOURCE)];
+        }
+
+        /**
+         * Returns the number of then statements of an if statement, which
+         * follow its condition and are followed by its else statements.
+         */
+        public int getThenCount() {
+            return data[field(COUNT, Kind.IF)];
+        }
+
+        /**
+         * Returns whether a case has a value, which is then its first child.
+         */
+        public boolean hasCaseValue() {
+            return data[field(COUNT, Kind.CASE)] != 0;
+        }
+
+        public String getName() {
+            return string(field(NAME, Kind.GLOBAL, Kind.FUNCTION, Kind.DECLARATION, Kind.ACCESS, Kind.CALL));
+        }
+
+        /**
+         * Returns the type name of a global or declaration, or the return type
+         * name of a function.
+         */
+        public Optional<String> getTypeName() {
+            return Optional.ofNullable(string(field(TYPE_NAME, Kind.GLOBAL, Kind.FUNCTION, Kind.DECLARATION)));
+        }
+
+        public boolean getMutable() {
+            return data[field(GLOBAL_MUTABLE, Kind.GLOBAL)] != 0;
+        }
+
+        public List<String> getParameters() {
+            return parameters(1);
+        }
+
+        public List<String> getParameterTypeNames() {
+            return parameters(2);
+        }
+
+        private List<String> parameters(int first) {
+            int fields = field(FUNCTION_PARAMETERS, Kind.FUNCTION);
+            List<String> parameters = new ArrayList<>();
+            for (int i = 0; i < data[fields]; i++) {
+                parameters.add(string(fields + first + 2 * i));
+            }
+            return parameters;
+        }
+
+        /**
+         * Returns the value of a literal, which is {@code null} for NIL.
+         */
+        public Object getLiteral() {
+            Object literal = constants[data[field(LITERAL_VALUE, Kind.LITERAL)]];
+            return literal == Builder.NULL ? null : literal;
+        }
+
+        /**
+         * Returns whether a literal has its value as a primitive, as in
+         * {@link Ast.Expression.Literal#hasPrimitive()}.
+         */
+        public boolean hasPrimitive() {
+            return data[field(LITERAL_PRIMITIVE, Kind.LITERAL)] != 0;
+        }
+
+        public long getLongValue() {
+            int fields = field(LITERAL_PRIMITIVE, Kind.LITERAL);
+            return ((long) data[fields + 1] << 32) | (data[fields + 2] & 0xFFFFFFFFL);
+        }
+
+        public double getDoubleValue() {
+            return Double.longBitsToDouble(getLongValue());
+        }
+
+        public String getOperator() {
+            return string(field(BINARY_OPERATOR, Kind.BINARY));
+        }
+
+        /**
+         * Returns the operator of a binary expression as a
+         * {@link Token.Operator}, or {@code null} if it is not one of the
+         * operators.
+         */
+        public Token.Operator getOperatorId() {
+            int operator = data[field(BINARY_OPERATOR_ID, Kind.BINARY)];
+            return operator == NONE ? null : OPERATORS[operator];
+        }
+
+        /**
+         * Returns the type of an expression, from its variable for an access
+         * and its function for a call.
+         */
+        public Environment.Type getType() {
+            switch (kind()) {
+                case ACCESS:
+                    return getVariable() == null ? null : getVariable().getType();
+                case CALL:
+                    return getFunction() == null ? null : getFunction().getReturnType();
+                default:
+                    return type(field(TYPE, Kind.LITERAL, Kind.GROUP, Kind.BINARY, Kind.LIST));
+            }
+        }
+
+        public Environment.Variable getVariable() {
+            int constant;
+            switch (kind()) {
+                case GLOBAL:
+                    constant = data[payload[node] + GLOBAL_VARIABLE];
+                    break;
+                case DECLARATION:
+                    constant = data[payload[node] + DECLARATION_VARIABLE];
+                    break;
+                default:
+                    constant = data[field(ACCESS_VARIABLE, Kind.ACCESS)];
+            }
+            return constant == NONE ? null : (Environment.Variable) constants[constant];
+        }
+
+        public Environment.Function getFunction() {
+            int constant = data[kind() == Kind.FUNCTION ? payload[node] + FUNCTION_FUNCTION : field(CALL_FUNCTION, Kind.CALL)];
+            return constant == NONE ? null : (Environment.Function) constants[constant];
+        }
+
+        /**
+         * Converts the subtree of the node to an {@link Ast}.
+         */
+        public Ast toAst() {
+            return FlatAst.this.toAst(node);
+        }
+
+        /**
+         * Returns the index in the pool of a field of the node, checking that
+         * it is one of the kinds having the field.
+         */
+        private int field(int field, Kind... kinds) {
+            Kind kind = kind();
+            for (Kind allowed : kinds) {
+                if (kind == allowed) {
+                    return payload[node] + field;
+                }
+            }
+            throw new IllegalStateException("A node of kind " + kind + " does not have this field.");
+        }
+
+    }
+
+    /**
+     * Appends nodes in pre-order along with their fields and constants.
+     */
+    private static final class Builder {
+
+        private static final Object NULL = new Object();    // Constant for the value of a NIL literal
+
+        private byte[] kinds = new byte[64];
+        private int[] firstChild = new int[64];
+        private int[] nextSibling = new int[64];
+        private int[] payload = new int[64];
+        private int[] offset = new int[64];
+        private int size = 0;
+        private int[] data = new int[256];
+        private int used = 0;
+        private final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> values = new HashMap<>();            // Strings and literals, by value
+        private final Map<Object, Integer> attachments = new IdentityHashMap<>();   // Types, variables and functions
+        private int topLevel = 0;   // Number of top-level nodes given an offset
+
+        /**
+         * Appends a node after the last child of its parent, returning its
+         * number.
+         */
+        private int add(Ast ast, int parent, int previous) {
+            if (size == kinds.length) {
+                int capacity = size * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                nextSibling = Arrays.copyOf(nextSibling, capacity);
+                payload = Arrays.copyOf(payload, capacity);
+                offset = Arrays.copyOf(offset, capacity);
+            }
+            int node = size++;
+            firstChild[node] = NONE;
+            nextSibling[node] = NONE;
+            offset[node] = NONE;
+            if (previous != NONE) {
+                nextSibling[previous] = node;
+            }
+            else if (parent != NONE) {
+                firstChild[parent] = node;
+            }
+            payload[node] = used;
+            kinds[node] = (byte) fields(ast).ordinal();
+            return node;
+        }
+
+        /**
+         * Appends the fields of the node to the pool, returning its kind.
+         */
+        private Kind fields(Ast ast) {
+            if (ast instanceof Ast.Source) {
+                append(((Ast.Source) ast).getGlobals().size());
+                return Kind.SOURCE;
+            }
+            else if (ast instanceof Ast.Global) {
+                Ast.Global global = (Ast.Global) ast;
+                append(value(global.getName()), value(global.getTypeName()), global.getMutable() ? 1 : 0, attachment(global.getVariableOrNull()));
+                return Kind.GLOBAL;
+            }
+            else if (ast instanceof Ast.Function) {
+                Ast.Function function = (Ast.Function) ast;
+                append(value(function.getName()), value(function.getReturnTypeName().orElse(null)), attachment(function.getFunctionOrNull()), function.getParameters().size());
+                for (int i = 0; i < function.getParameters().size(); i++) {
+                    append(value(function.getParameters().get(i)), value(function.getParameterTypeNames().get(i)));
+                }
+                return Kind.FUNCTION;
+            }
+            else if (ast instanceof Ast.Statement.Expression) {
+                return Kind.EXPRESSION_STATEMENT;
+            }
+            else if (ast instanceof Ast.Statement.Declaration) {
+                Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) ast;
+                append(value(declaration.getName()), value(declaration.getTypeName().orElse(null)), attachment(declaration.getVariableOrNull()));
+                return Kind.DECLARATION;
+            }
+            else if (ast instanceof Ast.Statement.Assignment) {
+                return Kind.ASSIGNMENT;
+            }
+            else if (ast instanceof Ast.Statement.If) {
+                append(((Ast.Statement.If) ast).getThenStatements().size());
+                return Kind.IF;
+            }
+            else if (ast instanceof Ast.Statement.Switch) {
+                return Kind.SWITCH;
+            }
+            else if (ast instanceof Ast.Statement.Case) {
+                append(((Ast.Statement.Case) ast).getValue().isPresent() ? 1 : 0);
+                return Kind.CASE;
+            }
+            else if (ast instanceof Ast.Statement.While) {
+                return Kind.WHILE;
+            }
+            else if (ast instanceof Ast.Statement.Return) {
+                return Kind.RETURN;
+            }
+            else if (ast instanceof Ast.Expression.Literal) {
+                Ast.Expression.Literal literal = (Ast.Expression.Literal) ast;
+                Object value = literal.getLiteral();
+                append(attachment(literal.getTypeOrNull()), value(value == null ? NULL : value), literal.hasPrimitive() ? 1 : 0);
+                if (literal.hasPrimitive()) {
+                    long bits = value instanceof BigInteger ? literal.getLongValue() : Double.doubleToRawLongBits(literal.getDoubleValue());
+                    append((int) (bits >>> 32), (int) bits);
+                }
+                return Kind.LITERAL;
+            }
+            else if (ast instanceof Ast.Expression.Group) {
+                append(attachment(((Ast.Expression.Group) ast).getTypeOrNull()));
+                return Kind.GROUP;
+            }
+            else if (ast instanceof Ast.Expression.Binary) {
+                Ast.Expression.Binary binary = (Ast.Expression.Binary) ast;
+                append(attachment(binary.getTypeOrNull()), value(binary.getOperator()), binary.getOperatorId() == null ? NONE : binary.getOperatorId().ordinal());
+                return Kind.BINARY;
+            }
+            else if (ast instanceof Ast.Expression.Access) {
+                append(value(((Ast.Expression.Access) ast).getName()), attachment(((Ast.Expression.Access) ast).getVariableOrNull()));
+                return Kind.ACCESS;
+            }
+            else if (ast instanceof Ast.Expression.Function) {
+                append(value(((Ast.Expression.Function) ast).getName()), attachment(((Ast.Expression.Function) ast).getFunctionOrNull()));
+                return Kind.CALL;
+            }
+            else if (ast instanceof Ast.Expression.PlcList) {
+                append(attachment(((Ast.Expression.PlcList) ast).getTypeOrNull()));
+                return Kind.LIST;
+            }
+            else {
+                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+            }
+        }
+
+        private void append(int... fields) {
+            if (used + fields.length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, used + fields.length));
+            }
+            System.arraycopy(fields, 0, data, used, fields.length);
+            used += fields.length;
+        }
+
+        private int value(Object value) {
+            return value == null ? NONE : values.computeIfAbsent(value, this::constant);
+        }
+
+        private int attachment(Object attachment) {
+            return attachment == null ? NONE : attachments.computeIfAbsent(attachment, this::constant);
+        }
+
+        private int constant(Object constant) {
+            constants.add(constant);
+            return constants.size() - 1;
+        }
+
+        private FlatAst build() {
+            return new FlatAst(Arrays.copyOf(kinds, size), Arrays.copyOf(firstChild, size), Arrays.copyOf(nextSibling, size),
+                    Arrays.copyOf(payload, size), Arrays.copyOf(offset, size), Arrays.copyOf(data, used), constants.toArray());
+        }
+
+    }
+
+}
@@ -9,6 +9,7 @@ import java.math.BigInteger;
 import java.math.MathContext;
 import java.math.RoundingMode;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
@@ -35,6 +36,16 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         return mainFunc.invoke(Collections.emptyList());
     }
 
+    /**
+     * Interprets a flat tree in the same way as its {@link Ast.Source},
+     * walking it with a cursor without converting any of it to an AST.
+     */
+    public Environment.PlcObject visit(FlatAst ast) {
+        visitChildren(ast.cursor(), 0, Integer.MAX_VALUE);
+        Environment.Function mainFunc = scope.lookupFunction("main", 0);
+        return mainFunc.invoke(Collections.emptyList());
+    }
+
     @Override
     public Environment.PlcObject visit(Ast.Global ast) {
         if (ast.getValue().isPresent()) {
@@ -106,9 +117,9 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         }
         // List value is being assigned:
         if (recAccess.getOffset().isPresent()) {
-            requireType(List.class, var.getValue());
+            List<Object> elements = elements(var.getValue());
             int offset = ((BigInteger) visit(recAccess.getOffset().get()).getValue()).intValue();
-            ((List<Object>) var.getValue().getValue()).set(offset, val.getValue());
+            elements.set(offset, val.getValue());
         }
         // Regular variable is being assigned:
         else {
@@ -210,33 +221,43 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Binary ast) {
-        String operator = ast.getOperator();
+        return visitBinary(ast.getOperatorId(), () -> visit(ast.getLeft()), () -> visit(ast.getRight()));
+    }
+
+    /**
+     * Evaluates a binary expression with the given operator, evaluating each
+     * operand only when it is needed.
+     */
+    private static Environment.PlcObject visitBinary(Token.Operator operator, Supplier<Environment.PlcObject> left, Supplier<Environment.PlcObject> right) {
+        if (operator == null) {
+            throw new RuntimeException("Invalid binary expression detected at runtime.");
+        }
         switch (operator) {
-            case "&&":
-            case "||": {
-                Environment.PlcObject lhs = visit(ast.getLeft());
+            case AND:
+            case OR: {
+                Environment.PlcObject lhs = left.get();
                 requireType(Boolean.class, lhs);
                 // Short-circuit cases:
-                if (lhs.getValue().equals(Boolean.FALSE) && operator.equals("&&")) {
+                if (lhs.getValue().equals(Boolean.FALSE) && operator == Token.Operator.AND) {
                     return lhs;
                 }
-                if (lhs.getValue().equals(Boolean.TRUE) && operator.equals("||")) {
+                if (lhs.getValue().equals(Boolean.TRUE) && operator == Token.Operator.OR) {
                     return lhs;
                 }
-                Environment.PlcObject rhs = visit(ast.getRight());
+                Environment.PlcObject rhs = right.get();
                 requireType(Boolean.class, rhs);
                 // Find the result:
-                if (operator.equals("&&")) {
+                if (operator == Token.Operator.AND) {
                     return Environment.create(Boolean.logicalAnd((boolean) lhs.getValue(), (boolean) rhs.getValue()));
                 }
                 else {
                     return Environment.create(Boolean.logicalOr((boolean) lhs.getValue(), (boolean) rhs.getValue()));
                 }
             }
-            case "<":
-            case ">": {
-                Environment.PlcObject lhs = visit(ast.getLeft());
-                Environment.PlcObject rhs = visit(ast.getRight());
+            case LESS:
+            case GREATER: {
+                Environment.PlcObject lhs = left.get();
+                Environment.PlcObject rhs = right.get();
                 // Check that classes match:
                 requireType(lhs.getValue().getClass(), rhs);
                 Comparable compLhs = requireType(Comparable.class, lhs);
@@ -244,26 +265,26 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 // Find the result
                 int compVal = 0;
                 compVal = compLhs.compareTo(compRhs);
-                if ((compVal < 0 && operator.equals("<")) || (compVal > 0 && operator.equals(">"))) {
+                if ((compVal < 0 && operator == Token.Operator.LESS) || (compVal > 0 && operator == Token.Operator.GREATER)) {
                     return Environment.create(Boolean.TRUE);
                 }
                 else {
                     return Environment.create(Boolean.FALSE);
                 }
             }
-            case "==": {
-                Environment.PlcObject lhs = visit(ast.getLeft());
-                Environment.PlcObject rhs = visit(ast.getRight());
+            case EQUAL: {
+                Environment.PlcObject lhs = left.get();
+                Environment.PlcObject rhs = right.get();
                 return Environment.create(Objects.equals(lhs.getValue(), rhs.getValue()));   // Are their values equal to one another?
             }
-            case "!=": {
-                Environment.PlcObject lhs = visit(ast.getLeft());
-                Environment.PlcObject rhs = visit(ast.getRight());
+            case NOT_EQUAL: {
+                Environment.PlcObject lhs = left.get();
+                Environment.PlcObject rhs = right.get();
                 return Environment.create(!Objects.equals(lhs.getValue(), rhs.getValue()));   // Are their values not equal to one another?
             }
-            case "+": {
-                Environment.PlcObject lhs = visit(ast.getLeft());
-                Environment.PlcObject rhs = visit(ast.getRight());
+            case PLUS: {
+                Environment.PlcObject lhs = left.get();
+                Environment.PlcObject rhs = right.get();
                 if (lhs.getValue() instanceof String || rhs.getValue() instanceof String) { // String concatenation
                     return Environment.create("" + lhs.getValue() + rhs.getValue());
                 }
@@ -279,13 +300,13 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                     throw new RuntimeException("Invalid arithmetic operation detected at runtime.");
                 }
             }
-            case "*":
-            case "-": {
-                Environment.PlcObject lhs = visit(ast.getLeft());
-                Environment.PlcObject rhs = visit(ast.getRight());
+            case MULTIPLY:
+            case MINUS: {
+                Environment.PlcObject lhs = left.get();
+                Environment.PlcObject rhs = right.get();
                 if (lhs.getValue() instanceof BigDecimal) {
                     requireType(BigDecimal.class, rhs);
-                    if (operator.equals("*")) {
+                    if (operator == Token.Operator.MULTIPLY) {
                         return Environment.create(((BigDecimal) lhs.getValue()).multiply((BigDecimal) rhs.getValue()));
                     }
                     else {
@@ -294,7 +315,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 }
                 else if (lhs.getValue() instanceof BigInteger) {
                     requireType(BigInteger.class, rhs);
-                    if (operator.equals("*")) {
+                    if (operator == Token.Operator.MULTIPLY) {
                         return Environment.create(((BigInteger) lhs.getValue()).multiply((BigInteger) rhs.getValue()));
                     }
                     else {
@@ -305,9 +326,9 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                     throw new RuntimeException("Invalid arithmetic operation detected at runtime.");
                 }
             }
-            case "/": {
-                Environment.PlcObject lhs = visit(ast.getLeft());
-                Environment.PlcObject rhs = visit(ast.getRight());
+            case DIVIDE: {
+                Environment.PlcObject lhs = left.get();
+                Environment.PlcObject rhs = right.get();
                 if (rhs.getValue().equals(BigDecimal.valueOf(0)) || rhs.getValue().equals(BigInteger.valueOf(0))) {
                     throw new RuntimeException("Cannot divide by 0.");
                 }
@@ -323,9 +344,9 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                     throw new RuntimeException("Invalid arithmetic operation detected at runtime.");
                 }
             }
-            case "^": {
-                Environment.PlcObject lhs = visit(ast.getLeft());
-                Environment.PlcObject rhs = visit(ast.getRight());
+            case POWER: {
+                Environment.PlcObject lhs = left.get();
+                Environment.PlcObject rhs = right.get();
                 requireType(BigInteger.class, rhs);
                 if (lhs.getValue() instanceof BigDecimal) {
                     return Environment.create(((BigDecimal) lhs.getValue()).pow(((BigInteger) rhs.getValue()).intValue(), MathContext.DECIMAL64));
@@ -349,9 +370,8 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         if (ast.getOffset().isPresent()) {  // A list value is being accessed
             Environment.PlcObject offset = visit(ast.getOffset().get());
             requireType(BigInteger.class, offset);
-            requireType(List.class, var.getValue());
             // Get the list of values, go to the desired offset, and return its appropriate value (wrapping it as a PlcObject):
-            result = Environment.create(((List<Environment.PlcObject>) var.getValue().getValue()).get(((BigInteger) offset.getValue()).intValue()));
+            result = Environment.create(elements(var.getValue()).get(((BigInteger) offset.getValue()).intValue()));
         }
         else {  // A normal variable is being accessed
             result = Environment.create(var.getValue().getValue());
@@ -378,6 +398,251 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         return Environment.create(evalList);
     }
 
+    /**
+     * Interprets the node at the cursor as its AST would be visited, leaving
+     * the cursor at the node unless an exception is thrown.
+     */
+    private Environment.PlcObject visit(FlatAst.Cursor cursor) {
+        switch (cursor.kind()) {
+            case GLOBAL:
+                return visitGlobal(cursor);
+            case FUNCTION:
+                return visitFunction(cursor);
+            case EXPRESSION_STATEMENT:
+                visitChild(cursor, 0);
+                return Environment.NIL;
+            case DECLARATION:
+                return visitDeclaration(cursor);
+            case ASSIGNMENT:
+                return visitAssignment(cursor);
+            case IF:
+                return visitIf(cursor);
+            case SWITCH:
+                return visitSwitch(cursor);
+            case CASE:
+                visitChildren(cursor, cursor.hasCaseValue() ? 1 : 0, Integer.MAX_VALUE);
+                return Environment.NIL;
+            case WHILE:
+                return visitWhile(cursor);
+            case RETURN:
+                throw new Return(visitChild(cursor, 0));
+            case LITERAL:
+                return cursor.getLiteral() == null ? Environment.NIL : Environment.create(cursor.getLiteral());
+            case GROUP:
+                return visitChild(cursor, 0);
+            case BINARY:
+                return visitBinary(cursor.getOperatorId(), () -> visitChild(cursor, 0), () -> visitChild(cursor, 1));
+            case ACCESS:
+                return visitAccess(cursor);
+            case CALL:
+                return visitCall(cursor);
+            case LIST:
+                return visitList(cursor);
+            default:
+                throw new AssertionError("Unimplemented node kind: " + cursor.kind() + ".");
+        }
+    }
+
+    private Environment.PlcObject visitGlobal(FlatAst.Cursor cursor) {
+        Environment.PlcObject value = Environment.NIL;
+        if (cursor.gotoFirstChild()) {
+            value = visit(cursor);
+            cursor.gotoParent();
+        }
+        scope.defineVariable(cursor.getName(), cursor.getMutable(), value);
+        return Environment.NIL;
+    }
+
+    private Environment.PlcObject visitFunction(FlatAst.Cursor cursor) {
+        Scope decScope = scope;     // Capture the declaring scope
+        FlatAst.Cursor function = cursor.copy();    // Capture the function's node, copied again for each invocation
+        List<String> parameters = cursor.getParameters();
+        scope.defineFunction(cursor.getName(), parameters.size(), args -> {
+            Scope invScope = scope;
+            scope = new Scope(decScope);
+            for (int i = 0; i < parameters.size(); i++) {
+                scope.defineVariable(parameters.get(i), true, args.get(i));
+            }
+            try {
+                visitChildren(function.copy(), 0, Integer.MAX_VALUE);
+            }
+            catch (Return returnValue) {
+                return returnValue.value;
+            }
+            finally {
+                scope = invScope;
+            }
+            return Environment.NIL;
+        });
+        return Environment.NIL;
+    }
+
+    private Environment.PlcObject visitDeclaration(FlatAst.Cursor cursor) {
+        Environment.PlcObject value = Environment.NIL;
+        if (cursor.gotoFirstChild()) {
+            value = visit(cursor);
+            cursor.gotoParent();
+        }
+        scope.defineVariable(cursor.getName(), true, value);
+        return Environment.NIL;
+    }
+
+    private Environment.PlcObject visitAssignment(FlatAst.Cursor cursor) {
+        Environment.PlcObject val = visitChild(cursor, 1);
+        cursor.gotoFirstChild();    // Receiver
+        if (cursor.kind() != FlatAst.Kind.ACCESS) {
+            throw new RuntimeException("Expected an access expression at runtime.");
+        }
+        Environment.Variable var = scope.lookupVariable(cursor.getName());
+        if (!var.getMutable()) {
+            throw new RuntimeException("Cannot assign to an immutable variable.");
+        }
+        if (cursor.gotoFirstChild()) {  // Offset of a list value
+            List<Object> elements = elements(var.getValue());
+            int offset = ((BigInteger) visit(cursor).getValue()).intValue();
+            elements.set(offset, val.getValue());
+            cursor.gotoParent();
+        }
+        else {
+            var.setValue(val);
+        }
+        cursor.gotoParent();
+        return Environment.NIL;
+    }
+
+    private Environment.PlcObject visitIf(FlatAst.Cursor cursor) {
+        int then = 1 + cursor.getThenCount();   // Index of the first else statement
+        Environment.PlcObject evalExpr = visitChild(cursor, 0);
+        requireType(Boolean.class, evalExpr);
+        scope = new Scope(scope);
+        try {
+            if (evalExpr.getValue().equals(Boolean.TRUE)) {
+                visitChildren(cursor, 1, then);
+            }
+            else {
+                visitChildren(cursor, then, Integer.MAX_VALUE);
+            }
+        }
+        finally {
+            scope = scope.getParent();
+        }
+        return Environment.NIL;
+    }
+
+    private Environment.PlcObject visitSwitch(FlatAst.Cursor cursor) {
+        scope = new Scope(scope);
+        Environment.PlcObject evalExpr = visitChild(cursor, 0);
+        try {
+            cursor.gotoFirstChild();
+            while (cursor.gotoNextSibling()) {  // Each case after the condition
+                if (cursor.hasCaseValue()) {
+                    Environment.PlcObject evalCase = visitChild(cursor, 0);
+                    if (evalExpr.getValue().equals(evalCase.getValue())) {
+                        visit(cursor);
+                        break;
+                    }
+                }
+                else {
+                    visit(cursor);
+                }
+            }
+            cursor.gotoParent();
+        }
+        finally {
+            scope = scope.getParent();
+        }
+        return Environment.NIL;
+    }
+
+    private Environment.PlcObject visitWhile(FlatAst.Cursor cursor) {
+        while (requireType(Boolean.class, visitChild(cursor, 0))) {
+            try {
+                scope = new Scope(scope);
+                visitChildren(cursor, 1, Integer.MAX_VALUE);
+            }
+            finally {
+                scope = scope.getParent();
+            }
+        }
+        return Environment.NIL;
+    }
+
+    private Environment.PlcObject visitAccess(FlatAst.Cursor cursor) {
+        Environment.Variable var = scope.lookupVariable(cursor.getName());
+        if (cursor.gotoFirstChild()) {  // Offset of a list value
+            Environment.PlcObject offset = visit(cursor);
+            cursor.gotoParent();
+            requireType(BigInteger.class, offset);
+            return Environment.create(elements(var.getValue()).get(((BigInteger) offset.getValue()).intValue()));
+        }
+        return Environment.create(var.getValue().getValue());
+    }
+
+    private Environment.PlcObject visitCall(FlatAst.Cursor cursor) {
+        Environment.Function func = scope.lookupFunction(cursor.getName(), cursor.getChildCount());
+        List<Environment.PlcObject> evalExpr = new ArrayList<>();
+        if (cursor.gotoFirstChild()) {
+            do {
+                evalExpr.add(visit(cursor));
+            } while (cursor.gotoNextSibling());
+            cursor.gotoParent();
+        }
+        return func.invoke(evalExpr);
+    }
+
+    private Environment.PlcObject visitList(FlatAst.Cursor cursor) {
+        List<Object> evalList = new ArrayList<>();
+        if (cursor.gotoFirstChild()) {
+            do {
+                evalList.add(visit(cursor).getValue());
+            } while (cursor.gotoNextSibling());
+            cursor.gotoParent();
+        }
+        return Environment.create(evalList);
+    }
+
+    /**
+     * Interprets the child of the node at the cursor with the given index,
+     * returning to the node.
+     */
+    private Environment.PlcObject visitChild(FlatAst.Cursor cursor, int index) {
+        cursor.gotoFirstChild();
+        for (int i = 0; i < index; i++) {
+            cursor.gotoNextSibling();
+        }
+        Environment.PlcObject result = visit(cursor);
+        cursor.gotoParent();
+        return result;
+    }
+
+    /**
+     * Interprets the children of the node at the cursor from the index
+     * {@code from} up to but excluding {@code to}, returning to the node.
+     */
+    private void visitChildren(FlatAst.Cursor cursor, int from, int to) {
+        if (from >= to || !cursor.gotoFirstChild()) {
+            return;
+        }
+        for (int i = 0; i < to; i++) {
+            if (i >= from) {
+                visit(cursor);
+            }
+            if (i + 1 == to || !cursor.gotoNextSibling()) {
+                break;
+            }
+        }
+        cursor.gotoParent();
+    }
+
+    /**
+     * Helper function to get the elements of a list value, which are always
+     * stored as plain values rather than PlcObjects.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Object> elements(Environment.PlcObject list) {
+        return (List<Object>) requireType(List.class, list);
+    }
+
     /**
      * Helper function to ensure an object is of the appropriate type.
      */
@@ -1,7 +1,21 @@
 package plc.project;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static plc.project.Token.Type.*;
 
@@ -16,32 +30,269 @@ import static plc.project.Token.Type.*;
  * should throw a {@link ParseException} with an index at the character which is
  * invalid.
  *
- * The {@link #peek(String...)} and {@link #match(String...)} functions are * helpers you need to use, they will make the implementation a lot easier. */
-public final class Lexer {
+ * The {@link #peek(String...)} and {@link #match(String...)} functions are * helpers you need to use, they will make the implementation a lot easier.
+ *
+ * The lexer is also a {@link TokenSource}, so tokens can be pulled one at a
+ * time with {@link #next()} instead of materializing the whole list. Combined
+ * with the {@link Reader} and {@link ReadableByteChannel} constructors this
+ * lexes arbitrarily large inputs in bounded memory. Large files can also be
+ * lexed in place with {@link #map(Path)}. */
+public final class Lexer implements TokenSource {
+
+    private static final int PARALLEL_THRESHOLD = 1 << 16;     // Inputs smaller than this are always lexed sequentially
+    private static final OperatorTrie OPERATORS = new OperatorTrie(Token.Operator.values());
 
     private final CharStream chars;
+    private final StringBuilder builder = new StringBuilder();  // Reused to decode string literals
+    private final LineTable lines = new LineTable();
 
     public Lexer(String input) {
         chars = new CharStream(input);
     }
 
+    /**
+     * Lexes the range [start, end) of the input, used for the chunks of
+     * {@link #lexParallel(ForkJoinPool)}.
+     */
+    private Lexer(CharSequence input, int start, int end) {
+        chars = new CharStream(input, start, end);
+    }
+
+    /**
+     * Lexes characters read on demand from the given reader.
+     */
+    public Lexer(Reader reader) {
+        chars = new CharStream(reader);
+    }
+
+    /**
+     * Lexes UTF-8 encoded characters read on demand from the given channel.
+     */
+    public Lexer(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1));
+    }
+
+    /**
+     * Lexes ASCII/UTF-8 encoded bytes directly out of the buffer (typically a
+     * {@link java.nio.MappedByteBuffer}) without decoding them into a String.
+     * Token indices are byte offsets from the start of the buffer, and token
+     * literals are only decoded when they are requested.
+     */
+    public Lexer(ByteBuffer buffer) {
+        chars = new CharStream(new ByteCharSequence(buffer));
+    }
+
+    /**
+     * Lexes ASCII/UTF-8 encoded bytes in place, see {@link #Lexer(ByteBuffer)}.
+     */
+    public Lexer(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Memory-maps the given file and lexes it in place, so token indices are
+     * absolute file offsets.
+     */
+    public static Lexer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Lexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));  // The mapping stays valid once the channel is closed
+        }
+    }
+
     /**
      * Repeatedly lexes the input using {@link #lexToken()}, also skipping over
      * whitespace where appropriate.
      */
     public List<Token> lex() {
         List<Token> tokenList = new ArrayList<Token>();
-        while (chars.has(0)) {  // While there are characters in the CharStream:
-            if (match("[\\s]") || match("[\b\n\t\r]")) {  // Ignore whitespace
-                chars.skip();
-                continue;
-            }
-            Token newToken = lexToken();
+        Token newToken;
+        while ((newToken = next()) != null) {
             tokenList.add(newToken);
         }
         return tokenList;
     }
 
+    /**
+     * Lexes the input in parallel on the common fork-join pool. See
+     * {@link #lexParallel(ForkJoinPool)}.
+     */
+    public List<Token> lexParallel() {
+        return lexParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, but splits it into
+     * chunks which are lexed in parallel on the given pool. Chunks end just
+     * after a newline, which is always safe since whitespace ends every token
+     * except a character literal containing a newline, so newlines directly
+     * after an apostrophe are never used.
+     *
+     * The result is identical to {@link #lex()}, including which
+     * {@link ParseException} is thrown, since chunks are joined in order. Small
+     * or streamed inputs are lexed sequentially.
+     */
+    public List<Token> lexParallel(ForkJoinPool pool) {
+        CharSequence input = chars.input;
+        if (input == null || chars.index != chars.start || chars.end - chars.start < PARALLEL_THRESHOLD) {
+            return lex();
+        }
+        int chunkSize = Math.max(PARALLEL_THRESHOLD / 4, (chars.end - chars.start) / (pool.getParallelism() * 4));
+        List<Lexer> chunks = new ArrayList<>();
+        List<ForkJoinTask<List<Token>>> tasks = new ArrayList<>();
+        int start = chars.start;
+        while (start < chars.end) {
+            int end = findSplit(input, Math.min(start + chunkSize, chars.end), chars.end);
+            Lexer chunk = new Lexer(input, start, end);
+            chunks.add(chunk);
+            tasks.add(pool.submit(chunk::lex));
+            start = end;
+        }
+        chars.index = chars.end;    // This lexer has now consumed the whole input
+        List<Token> tokenList = new ArrayList<>();
+        try {
+            for (int i = 0; i < tasks.size(); i++) {  // Joining in order means the earliest error is the one thrown
+                try {
+                    tokenList.addAll(tasks.get(i).join());
+                }
+                finally {   // The failed chunk's newlines are still needed to locate its error
+                    lines.addAll(chunks.get(i).lines);
+                }
+            }
+        }
+        finally {
+            tasks.forEach(task -> task.cancel(false));
+        }
+        return tokenList;
+    }
+
+    /**
+     * Returns the index just after the first safe newline at or after from,
+     * or end if there is none.
+     */
+    private static int findSplit(CharSequence input, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (input.charAt(i) == '\n' && (i == 0 || input.charAt(i - 1) != '\'')) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, but stores the tokens
+     * in a compact {@link TokenBuffer} instead of a list of token objects.
+     * This requires an in-memory input, since the buffer reads literals back
+     * out of the source.
+     */
+    public TokenBuffer lexBuffer() {
+        if (chars.input == null) {
+            throw new IllegalStateException("A token buffer cannot be created from a streamed input.");
+        }
+        TokenBuffer buffer = new TokenBuffer(chars.input);
+        Token newToken;
+        while ((newToken = next()) != null) {
+            buffer.add(newToken);
+        }
+        return buffer;
+    }
+
+    /**
+     * Converts an index into the input (such as a token index or
+     * {@link ParseException#getIndex()}) into a char index. These only differ
+     * when lexing encoded bytes, where indices are byte offsets.
+     */
+    public int getCharIndex(int index) {
+        return chars.input instanceof ByteCharSequence ? ((ByteCharSequence) chars.input).charIndex(index) : index;
+    }
+
+    /**
+     * Returns the line table of the input lexed so far, which covers every
+     * token returned and the index of any {@link ParseException} thrown.
+     */
+    public LineTable getLineTable() {
+        return lines;
+    }
+
+    /**
+     * Skips any whitespace and lexes the next token, returning {@code null}
+     * once the input is exhausted.
+     */
+    @Override
+    public Token next() {
+        skipWhitespace();
+        return chars.has(0) ? lexToken() : null;
+    }
+
+    /**
+     * Re-lexes the source of a previous token buffer after an edit replacing
+     * {@code removed} characters at {@code offset} with {@code inserted}.
+     *
+     * Lexing restarts at the last token which could be affected by the edit
+     * (the lexer looks at most two characters past the end of a token) and
+     * stops as soon as a token would start at the same position as one of the
+     * previous tokens past the edit. Since lexing only depends on the position
+     * it starts at, all remaining tokens are then copied over with their
+     * indices shifted. The work done is proportional to the damaged region
+     * rather than the whole file, apart from copying the arrays.
+     */
+    public static TokenBuffer relex(TokenBuffer previous, int offset, int removed, String inserted) {
+        CharSequence old = previous.getSource();
+        String source = new StringBuilder(old.length() - removed + inserted.length())
+                .append(old, 0, offset)
+                .append(inserted)
+                .append(old, offset + removed, old.length())
+                .toString();
+        int delta = inserted.length() - removed;
+        int editEnd = offset + inserted.length();   // End of the edit in the new source
+
+        int first = 0;  // First token which has to be re-lexed
+        while (first < previous.size() && previous.getIndex(first) + previous.getLength(first) + 1 < offset) {
+            first++;
+        }
+        TokenBuffer buffer = new TokenBuffer(source);
+        buffer.addAll(previous, 0, first, 0);
+
+        int restart = first < previous.size() ? Math.min(previous.getIndex(first), offset) : offset;
+        Lexer lexer = new Lexer(source, restart, source.length());
+        int next = first;   // Previous token which could next line up with the new tokens
+        while (true) {
+            lexer.skipWhitespace();
+            if (!lexer.chars.has(0)) {
+                break;
+            }
+            int position = lexer.chars.index;
+            if (position >= editEnd) {  // Past the edit, check whether the old tokens line up again
+                while (next < previous.size() && previous.getIndex(next) + delta < position) {
+                    next++;
+                }
+                if (next < previous.size() && previous.getIndex(next) + delta == position) {
+                    buffer.addAll(previous, next, previous.size(), delta);
+                    return buffer;
+                }
+            }
+            Token newToken = lexer.lexToken();
+            buffer.add(newToken);
+        }
+        return buffer;
+    }
+
+    /**
+     * Skips over any whitespace at the current position.
+     */
+    private void skipWhitespace() {
+        while (true) {
+            chars.advanceSpaces();  // Indentation is skipped a word at a time
+            if (!peek(CharClass.WHITESPACE)) {
+                break;
+            }
+            if (chars.get(0) == '\n') {    // Newlines are recorded in passing for the line table
+                lines.add(chars.index);
+            }
+            chars.advance();
+        }
+        chars.skip();
+    }
+
     /**
      * This method determines the type of the next token, delegating to the
      * appropriate lex method. As such, it is best for this method to not change
@@ -52,16 +303,16 @@ public final class Lexer {
      */
     public Token lexToken() {
         Token newToken;
-        if (peek("[A-Za-z@]")) {
+        if (peek(CharClass.IDENTIFIER_START)) {
             newToken = lexIdentifier();
         }
-        else if (peek("(-|[0-9])")) {
+        else if (peek(CharClass.NUMBER_START)) {
             newToken = lexNumber();
         }
-        else if (peek("\\'")) {
+        else if (peek('\'')) {
             newToken = lexCharacter();
         }
-        else if (peek("\\\"")) {
+        else if (peek('"')) {
             newToken = lexString();
         }
         else {
@@ -72,95 +323,197 @@ public final class Lexer {
 
     public Token lexIdentifier() {
         chars.advance();    // Advance past the first character
-        while (peek("[^\\s]")) {  // While the next character is not a whitespace:
-            if (!match("[A-Za-z0-9_-]")) {  // Keep matching to characters of the identifier until an unsupported character is reached
-                return chars.emit(IDENTIFIER);
-            }
-        }
-        return chars.emit(IDENTIFIER);  // Emit the identifier if the input ends while lexing
+        chars.advanceIdentifierPart();  // Keep matching to characters of the identifier until an unsupported character is reached
+        return chars.emit(IDENTIFIER);
     }
 
     public Token lexNumber() {
-        boolean zero = false;   // Used to track whether or not the number starts with a zero
-        if (match("0")) {
-            zero = true;
-        }
-        else if (match("-")) {
-            if (!peek("[0-9]")) {   // The hyphen is being used as an operator
-                return chars.emit(OPERATOR);
+        boolean negative = false;
+        if (match('-')) {
+            if (!peek(CharClass.DIGIT)) {   // The hyphen is being used as an operator
+                return chars.emit(OPERATOR, Token.Operator.MINUS);
             }
-            return lexNumber(); // Call the function to lex the actual number part (after the hyphen has been consumed)
+            negative = true;
         }
-        while (!zero && match("[0-9]")); // Empty body because the match function advances the CharStream
-        if (peek("\\.")) {
-            if (!chars.has(1) || !String.valueOf(chars.get(1)).matches("[0-9]")) {   // There are no numbers following the decimal point
-                return chars.emit(INTEGER);
+        long value = 0;     // Accumulated negatively, since a long reaches one further below zero than above it
+        boolean fits = true;
+        if (!match('0')) {  // A number starting with a zero cannot have more digits before the decimal point
+            while (peek(CharClass.DIGIT)) {
+                int digit = chars.get(0) - '0';
+                chars.advance();
+                fits = fits && canAppend(value, digit);
+                value = value * 10 - digit;
             }
+        }
+        int scale = 0;
+        Token.Type type = INTEGER;
+        if (peek('.') && chars.has(1) && CharClass.DIGIT.matches(chars.get(1))) {  // Only a decimal if digits follow the point
             chars.advance();
-            while (match("[0-9]")); // See above about empty body
-            return chars.emit(DECIMAL);
+            while (peek(CharClass.DIGIT)) {
+                int digit = chars.get(0) - '0';
+                chars.advance();
+                fits = fits && canAppend(value, digit);
+                value = value * 10 - digit;
+                scale++;
+            }
+            type = DECIMAL;
         }
-        else {
-            return chars.emit(INTEGER);
+        if (!negative) {
+            fits = fits && value != Long.MIN_VALUE;
+            value = -value;
         }
+        return chars.emit(type, value, fits ? scale : -1);
+    }
+
+    /**
+     * Returns true if appending the digit to the negatively accumulated value
+     * (value * 10 - digit) does not overflow a long.
+     */
+    private static boolean canAppend(long value, int digit) {
+        return value >= (Long.MIN_VALUE + digit) / 10;     // Division rounds towards zero, so this is the exact bound
     }
 
     public Token lexCharacter() {
+        String value = null;    // Only set if the character is an escape, otherwise the raw character is the value
         chars.advance();    // Advance past the starting apostrophe
-        if (match("\\\\")) {
-            lexEscape();
+        if (match('\\')) {
+            value = String.valueOf(lexEscape());
         }
         else {
-            chars.advance();
+            if (peek('\n')) {   // The only other place a newline can appear
+                lines.add(chars.index);
+            }
+            int length = characterLength();
+            for (int i = 0; i < (length < 4 ? length : 1); i++) {     // A 4 byte sequence is two chars, which is invalid as with a String input
+                chars.advance();
+            }
         }
-        if (!match("\\'")) {
+        if (!match('\'')) {
             throw new ParseException("Invalid use of character literal", chars.index);
         }
-        return chars.emit(CHARACTER);
+        return chars.emit(CHARACTER, value, value != null);
     }
 
     public Token lexString() {
+        boolean escaped = false;
+        boolean ascii = true;
+        builder.setLength(0);   // The decoded contents are only built up once an escape is found
         chars.advance();    // Advance past the starting quote
-        while (!match("\\\"")) {    // While the ending quote has not been reached
-            if (chars.index >= chars.input.length()) {
+        int run = chars.index;  // Start of the contents not copied into the builder yet
+        while (true) {
+            ascii &= chars.advanceStringContents();     // Runs without quotes, escapes or newlines are skipped a word at a time
+            if (!chars.has(0)) {
                 throw new ParseException("Reached EOF in string literal", chars.index);
             }
-            if (peek("\\n")) {
+            if (peek('\n')) {
                 throw new ParseException("String literal cannot span multiple lines", chars.index);
             }
-            if (match("\\\\")) {
-                lexEscape();
-            }
-            else {
-                chars.advance();
+            if (peek('"')) {    // The ending quote has been reached
+                break;
             }
+            chars.appendTo(builder, run);
+            chars.advance();    // Advance past the backslash
+            builder.append(lexEscape());
+            escaped = true;
+            run = chars.index;
         }
-        return chars.emit(STRING);
+        if (escaped) {
+            chars.appendTo(builder, run);
+        }
+        chars.advance();    // Advance past the ending quote
+        if (escaped && !ascii) {    // Non-ASCII input may be encoded bytes, so leave decoding to the token
+            return chars.emit(STRING, null, true);
+        }
+        return chars.emit(STRING, escaped ? builder.toString() : null, escaped);
     }
 
-    public void lexEscape() {   // Matches to a valid escape sequence, error if invalid
-        if (!match("[bnrt'\\\\\"]")) {
+    /**
+     * Matches to a valid escape sequence (after the backslash), returning the
+     * character it represents. Throws if the escape is invalid.
+     */
+    public char lexEscape() {
+        if (!peek(CharClass.ESCAPE)) {
             throw new ParseException("Invalid escape sequence", chars.index);
         }
+        char escape = chars.get(0);
+        chars.advance();
+        return decodeEscape(escape);
     }
 
-    public Token lexOperator() {    // Checks to see if the next character(s) represent a valid operator. If so, emit. If not, throw parse exception
-        if (match("!")) {
-            match("=");
-        }
-        else if (match("=")) {
-            match("=");
+    /**
+     * Returns the character represented by the escape sequence consisting of a
+     * backslash followed by the given character.
+     */
+    static char decodeEscape(char escape) {
+        switch (escape) {
+            case 'b':
+                return '\b';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            default:    // Quotes and backslashes represent themselves
+                return escape;
         }
-        else if (match("&")) {
-            match("&");
+    }
+
+    /**
+     * Decodes all escape sequences in the contents of an already lexed string
+     * or character literal in a single pass.
+     */
+    static String decodeEscapes(CharSequence contents) {
+        String text = contents.toString();  // Decodes the characters first if the contents are encoded bytes
+        StringBuilder decoded = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                c = decodeEscape(text.charAt(++i));
+            }
+            decoded.append(c);
         }
-        else if (match("|")) {
-            match("|");
+        return decoded.toString();
+    }
+
+    /**
+     * Lexes the longest {@link Token.Operator} at the current position by
+     * walking the operator trie, remembering the last node which ends an
+     * operator. Any other character is an operator by itself.
+     */
+    public Token lexOperator() {
+        Token.Operator operator = null;
+        int length = characterLength();
+        int node = OperatorTrie.ROOT;
+        for (int i = 0; chars.has(i) && (node = OPERATORS.next(node, chars.get(i))) != OperatorTrie.NONE; i++) {
+            if (OPERATORS.accept(node) != null) {
+                operator = OPERATORS.accept(node);
+                length = i + 1;
+            }
         }
-        else {
+        for (int i = 0; i < length; i++) {
             chars.advance();
         }
-        return chars.emit(OPERATOR);
+        return chars.emit(OPERATOR, operator);
+    }
+
+    /**
+     * Returns the number of input positions taken by the next character, which
+     * is only more than 1 for a well-formed multibyte sequence when lexing
+     * encoded bytes. This is only called for characters outside of string
+     * literals, which keep their bytes undecoded until their value is needed.
+     */
+    private int characterLength() {
+        if (!chars.has(0) || chars.get(0) < 0x80 || !(chars.input instanceof ByteCharSequence)) {
+            return 1;
+        }
+        int length = ByteCharSequence.sequenceLength(chars.get(0));
+        for (int i = 1; i < length; i++) {
+            if (!chars.has(i) || (chars.get(i) & 0xC0) != 0x80) {
+                return 1;
+            }
+        }
+        return length;
     }
 
     /**
@@ -170,7 +523,7 @@ public final class Lexer {
      */
     public boolean peek(String... patterns) {   // Checks to see if the next character(s) match the pattern parameter
         for (int i = 0; i < patterns.length; i++) { // Verifies that each character in chars matches the corresponding character in the pattern parameter
-            if (chars.has(i) && String.valueOf(chars.get(i)).matches(patterns[i])) {
+            if (chars.has(i) && CharClass.compile(patterns[i]).matches(chars.get(i))) {
                 continue;
             }
             return false;
@@ -193,6 +546,44 @@ public final class Lexer {
         return false;
     }
 
+    /**
+     * Returns true if the next character belongs to the given precompiled
+     * {@link CharClass}. This is the allocation free version of
+     * {@link #peek(String...)} used by the lex methods.
+     */
+    public boolean peek(CharClass charClass) {
+        return chars.has(0) && charClass.matches(chars.get(0));
+    }
+
+    /**
+     * Returns true if the next character is exactly the given character.
+     */
+    public boolean peek(char c) {
+        return chars.has(0) && chars.get(0) == c;
+    }
+
+    /**
+     * As {@link #peek(CharClass)}, but also advances past the matched character.
+     */
+    public boolean match(CharClass charClass) {
+        if (peek(charClass)) {
+            chars.advance();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * As {@link #peek(char)}, but also advances past the matched character.
+     */
+    public boolean match(char c) {
+        if (peek(c)) {
+            chars.advance();
+            return true;
+        }
+        return false;
+    }
+
     /**
      * A helper class maintaining the input string, current index of the char
      * stream, and the current length of the token being matched.
@@ -200,23 +591,82 @@ public final class Lexer {
      * You should rely on peek/match for state management in nearly all cases.
      * The only field you need to access is {@link #index} for any {@link
      * ParseException} which is thrown.
+     *
+     * The input may be any {@link CharSequence}. Tokens keep a reference to
+     * the input and only copy their literal out of it when it is requested,
+     * except for identifiers, which are interned through a {@link SymbolTable}
+     * so each distinct name is allocated once and keywords are recognized.
+     *
+     * When constructed from a {@link Reader}, characters are read in chunks
+     * into a buffer holding only the token currently being matched and the
+     * characters read ahead of it. Indices remain absolute offsets into the
+     * input either way.
      */
     public static final class CharStream {
 
-        private final String input;
+        private static final int CHUNK_SIZE = 8192;
+
+        private final CharSequence input;
+        private final int start;    // Range of the input being lexed
+        private final int end;
+        private final ByteBuffer bytes;     // Little-endian view of the input if it is encoded bytes, read a word at a time
+        private final int bytesOffset;
+        private final Reader reader;
+        private final SymbolTable symbols = new SymbolTable();
+        private char[] buffer;
+        private CharSequence window;    // View of the buffer used for symbol lookups
+        private int offset = 0;     // Absolute index of buffer[0]
+        private int limit = 0;      // Number of characters read into the buffer
+        private boolean eof = false;
         private int index = 0;
         private int length = 0;
 
-        public CharStream(String input) {
+        public CharStream(CharSequence input) {
+            this(input, 0, input.length());
+        }
+
+        /**
+         * Creates a stream over the range [start, end) of the input. Indices
+         * are still absolute offsets into the whole input.
+         */
+        public CharStream(CharSequence input, int start, int end) {
             this.input = input;
+            this.bytes = input instanceof ByteCharSequence ? ((ByteCharSequence) input).getBuffer() : null;
+            this.bytesOffset = input instanceof ByteCharSequence ? ((ByteCharSequence) input).getOffset() : 0;
+            this.start = start;
+            this.end = end;
+            this.reader = null;
+            this.index = start;
+        }
+
+        public CharStream(Reader reader) {
+            this.input = null;
+            this.bytes = null;
+            this.bytesOffset = 0;
+            this.start = 0;
+            this.end = 0;
+            this.reader = reader;
+            this.buffer = new char[CHUNK_SIZE];
+            this.window = CharBuffer.wrap(buffer);
         }
 
         public boolean has(int offset) {
-            return index + offset < input.length();
+            if (reader == null) {
+                return index + offset < end;
+            }
+            int position = index + offset - this.offset;
+            return position < limit || fill(position);
         }
 
         public char get(int offset) {
-            return input.charAt(index + offset);
+            if (reader == null) {
+                return input.charAt(index + offset);
+            }
+            int position = index + offset - this.offset;
+            if (position >= limit && !fill(position)) {
+                throw new IndexOutOfBoundsException("Index " + (index + offset) + " is past the end of the input");
+            }
+            return buffer[position];
         }
 
         public void advance() {
@@ -228,10 +678,177 @@ public final class Lexer {
             length = 0;
         }
 
+        /**
+         * Advances past a run of spaces.
+         */
+        void advanceSpaces() {
+            if (bytes != null) {
+                while (index + Long.BYTES <= end) {
+                    int count = Swar.firstByte(Swar.notSpace(bytes.getLong(bytesOffset + index)));
+                    index += count;
+                    length += count;
+                    if (count < Long.BYTES) {
+                        return;
+                    }
+                }
+            }
+            while (has(0) && get(0) == ' ') {
+                advance();
+            }
+        }
+
+        /**
+         * Advances past a run of {@link CharClass#IDENTIFIER_PART} characters.
+         */
+        void advanceIdentifierPart() {
+            if (bytes != null) {
+                while (index + Long.BYTES <= end) {
+                    int count = Swar.firstByte(Swar.notIdentifierPart(bytes.getLong(bytesOffset + index)));
+                    index += count;
+                    length += count;
+                    if (count < Long.BYTES) {
+                        return;
+                    }
+                }
+            }
+            while (has(0) && CharClass.IDENTIFIER_PART.matches(get(0))) {
+                advance();
+            }
+        }
+
+        /**
+         * Advances to the next quote, backslash or newline in a string
+         * literal (or the end of the input), returning false if any of the
+         * characters passed are outside of ASCII.
+         */
+        boolean advanceStringContents() {
+            boolean ascii = true;
+            if (bytes != null) {
+                while (index + Long.BYTES <= end) {
+                    long word = bytes.getLong(bytesOffset + index);
+                    long delimiters = Swar.stringDelimiter(word);
+                    int count = Swar.firstByte(delimiters);
+                    ascii &= Swar.nonAscii(word & (delimiters - 1 & ~delimiters)) == 0;    // Only the bytes before the first delimiter
+                    index += count;
+                    length += count;
+                    if (count < Long.BYTES) {
+                        return ascii;
+                    }
+                }
+            }
+            while (has(0)) {
+                char c = get(0);
+                if (c == '"' || c == '\\' || c == '\n') {
+                    break;
+                }
+                ascii &= c < 0x80;
+                advance();
+            }
+            return ascii;
+        }
+
+        /**
+         * Appends the characters of the current token from the given index up
+         * to the current position.
+         */
+        void appendTo(StringBuilder builder, int from) {
+            if (reader == null) {
+                builder.append(input, from, index);
+            }
+            else {
+                builder.append(buffer, from - offset, index - from);
+            }
+        }
+
         public Token emit(Token.Type type) {
             int start = index - length;
             skip();
-            return new Token(type, input.substring(start, index), start);
+            if (type == IDENTIFIER) {   // Identifiers are interned instead of copied out of the input
+                int slot = reader == null
+                        ? symbols.lookup(input, start, index - start)
+                        : symbols.lookup(window, start - offset, index - start);
+                return new Token(type, input, symbols.getName(slot), start, symbols.getKeyword(slot));
+            }
+            if (reader != null) {
+                return new Token(type, new String(buffer, start - offset, index - start), start);
+            }
+            return new Token(type, input, start, index - start);
+        }
+
+        /**
+         * Emits an operator token with the operator found by the trie, or
+         * {@code null} for any other character.
+         */
+        public Token emit(Token.Type type, Token.Operator operator) {
+            int start = index - length;
+            skip();
+            if (reader != null) {
+                return new Token(type, null, new String(buffer, start - offset, index - start), start, index - start, operator);
+            }
+            return new Token(type, input, null, start, index - start, operator);
+        }
+
+        /**
+         * Emits an integer or decimal literal token with the value accumulated
+         * while scanning its digits, see {@link Token#hasNumber()}.
+         */
+        public Token emit(Token.Type type, long number, int scale) {
+            int start = index - length;
+            skip();
+            if (reader != null) {
+                return new Token(type, null, new String(buffer, start - offset, index - start), start, index - start, number, scale);
+            }
+            return new Token(type, input, null, start, index - start, number, scale);
+        }
+
+        /**
+         * Emits a string or character literal token with its decoded value. If
+         * the value is {@code null}, it is computed when requested, either by
+         * reusing the raw contents or, if escaped is set, by decoding them.
+         */
+        public Token emit(Token.Type type, String value, boolean escaped) {
+            int start = index - length;
+            skip();
+            if (reader != null) {
+                return new Token(type, null, new String(buffer, start - offset, index - start), start, index - start, value, escaped);
+            }
+            return new Token(type, input, null, start, index - start, value, escaped);
+        }
+
+        /**
+         * Reads from the reader until the buffer holds the given position,
+         * returning false if the input ends first. Characters before the start
+         * of the current token are discarded to make room.
+         */
+        private boolean fill(int position) {
+            if (eof) {
+                return false;
+            }
+            int start = index - length - offset;
+            if (start > 0) {    // Shift the current token to the front of the buffer
+                System.arraycopy(buffer, start, buffer, 0, limit - start);
+                limit -= start;
+                offset += start;
+                position -= start;
+            }
+            try {
+                while (limit <= position) {
+                    if (limit == buffer.length) {   // The current token fills the buffer, so grow it
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                        window = CharBuffer.wrap(buffer);
+                    }
+                    int read = reader.read(buffer, limit, buffer.length - limit);
+                    if (read < 0) {
+                        eof = true;
+                        return false;
+                    }
+                    limit += read;
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
         }
 
     }
@@ -0,0 +1,86 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * The offsets of the newlines in a source, which maps a character index (such
+ * as {@link ParseException#getIndex()}) to a line and column by binary search
+ * instead of rescanning the source for every lookup.
+ *
+ * The lexer records newlines as it skips over them, so its table covers the
+ * input lexed so far, see {@link Lexer#getLineTable()}. Lines and columns are
+ * numbered from 1, and a newline belongs to the line it ends. A {@code '\r'}
+ * before a newline is counted as part of the line, so both line endings work.
+ */
+public final class LineTable {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] newlines = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Creates a table for the given source by scanning it for newlines, for
+     * when the source was not lexed by a {@link Lexer}.
+     */
+    public static LineTable of(CharSequence source) {
+        LineTable table = new LineTable();
+        for (int i = 0; i < source.length(); i++) {
+            if (source.charAt(i) == '\n') {
+                table.add(i);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Records a newline at the given index, which must come after every
+     * newline recorded so far.
+     */
+    void add(int index) {
+        if (size == newlines.length) {
+            newlines = Arrays.copyOf(newlines, size * 2);
+        }
+        newlines[size++] = index;
+    }
+
+    /**
+     * Appends the newlines of another table, which covers the input after the
+     * last newline in this one.
+     */
+    void addAll(LineTable other) {
+        if (size + other.size > newlines.length) {
+            newlines = Arrays.copyOf(newlines, Math.max(newlines.length * 2, size + other.size));
+        }
+        System.arraycopy(other.newlines, 0, newlines, size, other.size);
+        size += other.size;
+    }
+
+    /**
+     * Returns the number of lines, which is one more than the number of
+     * newlines.
+     */
+    public int getLineCount() {
+        return size + 1;
+    }
+
+    public int getLine(int index) {
+        int position = Arrays.binarySearch(newlines, 0, size, index);
+        return 1 + (position >= 0 ? position : -position - 1);  // The number of newlines before the index
+    }
+
+    public int getColumn(int index) {
+        return index - getLineStart(getLine(index)) + 1;
+    }
+
+    /**
+     * Returns the index of the first character of the given line.
+     */
+    public int getLineStart(int line) {
+        if (line < 1 || line > getLineCount()) {
+            throw new IndexOutOfBoundsException("Line " + line + " is out of bounds for " + getLineCount() + " lines");
+        }
+        return line == 1 ? 0 : newlines[line - 2] + 1;
+    }
+
+}
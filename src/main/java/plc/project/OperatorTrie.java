@@ -0,0 +1,85 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * A trie over the symbols of a set of operators, stored as a DFA transition
+ * table so the lexer can find the longest operator at a position in a single
+ * scan. Node 0 is the root, and since no transition leads back to the root, a
+ * transition of 0 means there is none.
+ *
+ * Only ASCII characters have transitions, which covers every operator symbol.
+ */
+final class OperatorTrie {
+
+    static final int ROOT = 0;
+    static final int NONE = 0;
+
+    private static final int ALPHABET = 128;
+
+    private int[] transitions = new int[ALPHABET];  // Node * ALPHABET + character -> next node
+    private Token.Operator[] accepts = new Token.Operator[1];   // The operator ending at each node, if any
+    private int size = 1;
+
+    OperatorTrie(Token.Operator... operators) {
+        for (Token.Operator operator : operators) {
+            add(operator);
+        }
+    }
+
+    /**
+     * Returns the node reached from the given node by the character, or
+     * {@link #NONE} if no operator continues with it.
+     */
+    int next(int node, char c) {
+        return c < ALPHABET ? transitions[node * ALPHABET + c] : NONE;
+    }
+
+    /**
+     * Returns the operator whose symbol ends at the given node, or
+     * {@code null} if the node is only a prefix of longer symbols.
+     */
+    Token.Operator accept(int node) {
+        return accepts[node];
+    }
+
+    /**
+     * Returns the operator spelled by exactly the given range of the source,
+     * or {@code null} if it is not one of the operators.
+     */
+    Token.Operator find(CharSequence source, int start, int length) {
+        int node = ROOT;
+        for (int i = start; i < start + length; i++) {
+            if ((node = next(node, source.charAt(i))) == NONE) {
+                return null;
+            }
+        }
+        return length == 0 ? null : accepts[node];
+    }
+
+    private void add(Token.Operator operator) {
+        String symbol = operator.getSymbol();
+        int node = ROOT;
+        for (int i = 0; i < symbol.length(); i++) {
+            char c = symbol.charAt(i);
+            if (c >= ALPHABET) {
+                throw new IllegalArgumentException("Operator " + symbol + " is not ASCII.");
+            }
+            if (transitions[node * ALPHABET + c] == NONE) {
+                int child = newNode();  // Grows the arrays, so it has to be called before indexing into them
+                transitions[node * ALPHABET + c] = child;
+            }
+            node = transitions[node * ALPHABET + c];
+        }
+        accepts[node] = operator;
+    }
+
+    private int newNode() {
+        if (size == accepts.length) {
+            accepts = Arrays.copyOf(accepts, size * 2);
+            transitions = Arrays.copyOf(transitions, size * 2 * ALPHABET);
+        }
+        return size++;
+    }
+
+}
@@ -0,0 +1,239 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A parsed source along with the span of tokens covered by each of its
+ * top-level nodes (the globals followed by the functions), which can be
+ * edited without parsing the whole source again.
+ *
+ * An edit re-lexes the source with {@link Lexer#relex(TokenBuffer, int, int,
+ * String)} and compares the new tokens with the old ones to find the range of
+ * damaged tokens. Nodes entirely before or after that range are reused as the
+ * same objects, so anything attached to them by later phases is kept, and
+ * only the nodes overlapping it are parsed again. The reparsed nodes and the
+ * old nodes they replaced are reported by {@link #getChanged()} and
+ * {@link #getRemoved()}.
+ */
+public final class ParsedSource {
+
+    private final TokenBuffer tokens;
+    private final Ast.Source ast;
+    private final int[] starts;     // First token of each node, followed by the number of tokens
+    private final List<Ast> changed;
+    private final List<Ast> removed;
+
+    private ParsedSource(TokenBuffer tokens, Ast.Source ast, int[] starts, List<Ast> changed, List<Ast> removed) {
+        this.tokens = tokens;
+        this.ast = ast;
+        this.starts = starts;
+        this.changed = changed;
+        this.removed = removed;
+    }
+
+    public static ParsedSource parse(String source) throws ParseException {
+        return parse(new Lexer(source).lexBuffer());
+    }
+
+    /**
+     * Parses the tokens in the same way as {@link Parser#parseSource()}, with
+     * every node reported as changed.
+     */
+    public static ParsedSource parse(TokenBuffer tokens) throws ParseException {
+        return parse(tokens, null, 0, 0);
+    }
+
+    /**
+     * Returns the source after an edit replacing {@code removed} characters
+     * at {@code offset} with {@code inserted}, which is identical to parsing
+     * the edited source from scratch, including the {@link ParseException}
+     * thrown if it is invalid. This snapshot is left unchanged, so after an
+     * error the edited source has to be parsed again with
+     * {@link #parse(String)}.
+     */
+    public ParsedSource edit(int offset, int removed, String inserted) throws ParseException {
+        TokenBuffer edited = Lexer.relex(tokens, offset, removed, inserted);
+        int delta = inserted.length() - removed;
+        int shift = edited.size() - tokens.size();
+        int shared = Math.min(tokens.size(), edited.size());
+        int prefix = 0;     // Number of unchanged tokens before the edit
+        while (prefix < shared && tokens.getIndex(prefix) + tokens.getLength(prefix) <= offset && same(tokens, prefix, edited, prefix, 0)) {
+            prefix++;
+        }
+        int suffix = 0;     // Number of tokens after the edit which are unchanged apart from their index
+        while (prefix + suffix < shared && tokens.getIndex(tokens.size() - suffix - 1) >= offset + removed
+                && same(tokens, tokens.size() - suffix - 1, edited, edited.size() - suffix - 1, delta)) {
+            suffix++;
+        }
+        if (prefix + suffix == tokens.size() && shift == 0) {   // Only whitespace changed, so every node is kept
+            return new ParsedSource(edited, ast, starts, Collections.emptyList(), Collections.emptyList());
+        }
+
+        int first = 0;  // First node overlapping the damaged tokens
+        while (first < size() && starts[first + 1] <= prefix) {
+            first++;
+        }
+        return parse(edited, this, first, tokens.size() - suffix);
+    }
+
+    /**
+     * Parses the tokens starting at the given node of the previous source,
+     * reusing the nodes before it, and the later nodes which start at or
+     * after the given token of the previous source as soon as they line up
+     * with the new tokens again.
+     */
+    private static ParsedSource parse(TokenBuffer tokens, ParsedSource previous, int first, int clean) throws ParseException {
+        int shift = previous != null ? tokens.size() - previous.tokens.size() : 0;
+        int count = previous != null ? previous.size() : 0;
+        int oldGlobals = previous != null ? previous.ast.getGlobals().size() : 0;
+        List<Ast> nodes = new ArrayList<>();
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < first; i++) {
+            nodes.add(previous.node(i));
+            starts.add(previous.starts[i]);
+        }
+        List<Ast> changed = new ArrayList<>();
+        List<Ast> removed = new ArrayList<>();
+
+        int position = previous != null ? previous.starts[first] : 0;
+        boolean globals = first <= oldGlobals;  // Globals must come before every function
+        int next = first;   // Previous node which could next line up with the new tokens
+        int reused = count; // First previous node which was reused after the damaged tokens
+        while (true) {
+            while (next < count && previous.starts[next] + shift < position) {     // Check whether the old nodes line up again
+                next++;
+            }
+            if (next < count && previous.starts[next] + shift == position && (globals || next >= oldGlobals)
+                    && sameText(previous.tokens, previous.starts[next], tokens, position, clean - previous.starts[next])) {
+                reused = next;
+                for (int i = next; i < count; i++) {
+                    nodes.add(previous.node(i));
+                    starts.add(previous.starts[i] + shift);
+                }
+                break;
+            }
+            if (position == tokens.size()) {
+                break;
+            }
+            Token.Keyword keyword = tokens.getKeyword(position);
+            Parser parser = new Parser(tokens, position);
+            Ast node;
+            if (globals && (keyword == Token.Keyword.LIST || keyword == Token.Keyword.VAR || keyword == Token.Keyword.VAL)) {
+                node = parser.parseGlobal();
+            }
+            else if (keyword == Token.Keyword.FUN) {
+                node = parser.parseFunction();
+                globals = false;
+            }
+            else {  // There should be no more tokens after globals and functions have been parsed
+                throw new ParseException("Unexpected token", tokens.getIndex(position));
+            }
+            nodes.add(node);
+            starts.add(position);
+            changed.add(node);
+            position = parser.position();
+        }
+        for (int i = first; i < reused; i++) {
+            removed.add(previous.node(i));
+        }
+
+        List<Ast.Global> globalNodes = new ArrayList<>();
+        List<Ast.Function> functionNodes = new ArrayList<>();
+        int[] spans = new int[nodes.size() + 1];
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i) instanceof Ast.Global) {
+                globalNodes.add((Ast.Global) nodes.get(i));
+            }
+            else {
+                functionNodes.add((Ast.Function) nodes.get(i));
+            }
+            spans[i] = starts.get(i);
+        }
+        spans[nodes.size()] = tokens.size();
+        return new ParsedSource(tokens, new Ast.Source(globalNodes, functionNodes), spans, changed, removed);
+    }
+
+    /**
+     * Returns whether the given number of tokens starting at i in the
+     * previous buffer have the same text as those starting at j, which is
+     * only checked for tokens in the damaged range, with the tokens past it
+     * known to be the same.
+     */
+    private static boolean sameText(TokenBuffer previous, int i, TokenBuffer tokens, int j, int count) {
+        for (int k = 0; k < count; k++) {
+            if (previous.getType(i + k) != tokens.getType(j + k) || previous.getLength(i + k) != tokens.getLength(j + k)) {
+                return false;
+            }
+            for (int c = 0; c < previous.getLength(i + k); c++) {
+                if (previous.getSource().charAt(previous.getIndex(i + k) + c) != tokens.getSource().charAt(tokens.getIndex(j + k) + c)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean same(TokenBuffer previous, int i, TokenBuffer tokens, int j, int delta) {
+        return previous.getType(i) == tokens.getType(j)
+                && previous.getIndex(i) + delta == tokens.getIndex(j)
+                && previous.getLength(i) == tokens.getLength(j);
+    }
+
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    public Ast.Source getAst() {
+        return ast;
+    }
+
+    /**
+     * Returns the number of top-level nodes.
+     */
+    public int size() {
+        return starts.length - 1;
+    }
+
+    /**
+     * Returns the top-level node at the given index, counting the globals
+     * followed by the functions.
+     */
+    public Ast node(int node) {
+        int globals = ast.getGlobals().size();
+        return node < globals ? ast.getGlobals().get(node) : ast.getFunctions().get(node - globals);
+    }
+
+    /**
+     * Returns the index of the first token of the given node.
+     */
+    public int getStart(int node) {
+        return starts[node];
+    }
+
+    /**
+     * Returns the index of the token after the given node.
+     */
+    public int getEnd(int node) {
+        return starts[node + 1];
+    }
+
+    /**
+     * Returns the nodes which were parsed by the edit creating this source, in
+     * source order. Every other node is the same object as in the previous
+     * source.
+     */
+    public List<Ast> getChanged() {
+        return Collections.unmodifiableList(changed);
+    }
+
+    /**
+     * Returns the nodes of the previous source which were replaced by the
+     * changed nodes, in source order.
+     */
+    public List<Ast> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+}
@@ -6,6 +6,8 @@ import javax.swing.text.html.Option;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * The parser takes the sequence of tokens emitted by the lexer and turns that
@@ -18,14 +20,79 @@ import java.util.*;
  *
  * This type of parser is called <em>recursive descent</em>. Each rule in our
  * grammar will have its own function, and reference to other rules correspond
- * to calling that functions.
+ * to calling that functions. The exception is binary expressions, which are
+ * parsed by precedence climbing over a table of operator precedences instead
+ * of one nested call per precedence level.
+ *
+ * Tokens are pulled from a {@link TokenSource} through a bounded lookahead
+ * window, so a {@link Lexer} can be passed in directly to parse without ever
+ * materializing the full token list. Alternatively, the parser can read a
+ * {@link TokenBuffer} in place without creating any token objects.
  */
 public final class Parser {
 
+    private static final int LOGICAL = 1;
+    private static final int COMPARISON = 2;
+    private static final int ADDITIVE = 3;
+    private static final int MULTIPLICATIVE = 4;
+    private static final int[] PRECEDENCE = new int[Token.Operator.values().length];   // Precedence of each binary operator, 0 for any other operator
+    private static final Set<Token.Keyword> GLOBALS = EnumSet.of(Token.Keyword.LIST, Token.Keyword.VAR, Token.Keyword.VAL);
+    private static final Set<Token.Keyword> TOP_LEVEL = EnumSet.of(Token.Keyword.FUN, Token.Keyword.VAR, Token.Keyword.VAL, Token.Keyword.LIST);
+    private static final Set<Token.Keyword> BLOCK_ENDS = EnumSet.of(Token.Keyword.END, Token.Keyword.ELSE, Token.Keyword.CASE, Token.Keyword.DEFAULT);     // All the cases where a block ends
+
+    static {
+        precedence(LOGICAL, Token.Operator.AND, Token.Operator.OR);
+        precedence(COMPARISON, Token.Operator.GREATER, Token.Operator.LESS, Token.Operator.EQUAL, Token.Operator.NOT_EQUAL);
+        precedence(ADDITIVE, Token.Operator.PLUS, Token.Operator.MINUS);
+        precedence(MULTIPLICATIVE, Token.Operator.MULTIPLY, Token.Operator.DIVIDE, Token.Operator.POWER);
+    }
+
+    private static final int PARALLEL_THRESHOLD = 1 << 14;     // Sources with fewer tokens than this are always parsed sequentially
+
     private final TokenStream tokens;
+    private final List<Token> list;     // The token list being parsed, if random access to it is possible
+    private final int offset;           // Index of the first token of the stream in the list
+    private final Map<String, String> names = new HashMap<>();    // Used to share one instance of each name and operator
+    private List<ParseException> errors = null;     // Where errors are recorded while recovering, otherwise null
+    private boolean iterative = false;  // Whether nesting is parsed with an explicit stack instead of recursion
+    private final List<Ast.Expression> operands = new ArrayList<>();    // Stacks of parseExpressionIteratively, kept to be reused
+    private final List<Token.Operator> operators = new ArrayList<>();
+    private final List<Nesting> nestings = new ArrayList<>();
 
     public Parser(List<Token> tokens) {
-        this.tokens = new TokenStream(tokens);
+        this(tokens, 0);
+    }
+
+    /**
+     * Parses the tokens of the list starting at the given index, used for the
+     * functions parsed by {@link #parseSourceParallel(ForkJoinPool)}.
+     */
+    private Parser(List<Token> tokens, int offset) {
+        this.tokens = new TokenStream(TokenSource.of(tokens.subList(offset, tokens.size())));
+        this.list = tokens;
+        this.offset = offset;
+    }
+
+    public Parser(TokenSource source) {
+        this.tokens = new TokenStream(source);
+        this.list = null;
+        this.offset = 0;
+    }
+
+    public Parser(TokenBuffer buffer) {
+        this(buffer, 0);
+    }
+
+    /**
+     * Parses the buffer starting at the given token, used for the functions
+     * parsed by {@link #parseSourceParallel(ForkJoinPool)} and the nodes
+     * reparsed by {@link ParsedSource#edit(int, int, String)}.
+     */
+    Parser(TokenBuffer buffer, int start) {
+        this.tokens = new TokenStream(buffer);
+        this.tokens.index = start;
+        this.list = null;
+        this.offset = 0;
     }
 
     /**
@@ -37,22 +104,224 @@ public final class Parser {
         List<Ast.Function> functions = new ArrayList<>();
 
         // Parsing globals:
-        while (peek("LIST") || peek("VAR") || peek("VAL")) {
+        while (peek(GLOBALS)) {
             globals.add(parseGlobal());
         }
 
         // Parsing functions:
-        while (peek("FUN")) {
+        while (peek(Token.Keyword.FUN)) {
             functions.add(parseFunction());
         }
 
         if (tokens.has(0)) {    // There should be no more tokens after globals and functions have been parsed
-            throw new ParseException("Unexpected token", tokens.get(0).getIndex());
+            throw new ParseException("Unexpected token", tokens.index(0));
+        }
+
+        return new Ast.Source(globals, functions);
+    }
+
+    /**
+     * Parses the {@code source} rule in parallel on the common fork-join
+     * pool. See {@link #parseSourceParallel(ForkJoinPool)}.
+     */
+    public Ast.Source parseSourceParallel() throws ParseException {
+        return parseSourceParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the {@code source} rule in the same way as {@link #parseSource()},
+     * but parses the functions in parallel on the given pool. The globals are
+     * parsed first, then a pre-scan of the tokens finds where each function
+     * ends by matching every {@code DO} and {@code SWITCH} with its
+     * {@code END}. Batches of consecutive functions are then parsed by
+     * separate parsers starting at their first token.
+     *
+     * Batches are joined in order, and a parser only moves on to its next
+     * function once the previous one ended exactly where the pre-scan
+     * predicted. Each function is therefore parsed from the same position as
+     * in a sequential parse, so the result, including which
+     * {@link ParseException} is thrown (the one with the lowest index), is
+     * identical to {@link #parseSource()}. If a function ends somewhere else,
+     * the rest of the source is parsed sequentially from there. Sources read
+     * from a {@link TokenSource} or with few tokens are parsed sequentially.
+     */
+    public Ast.Source parseSourceParallel(ForkJoinPool pool) throws ParseException {
+        int size = list != null ? list.size() : tokens.buffer != null ? tokens.buffer.size() : -1;
+        if (size < PARALLEL_THRESHOLD || position() != 0) {
+            return parseSource();
+        }
+        List<Ast.Global> globals = new ArrayList<>();
+        while (peek(GLOBALS)) {
+            globals.add(parseGlobal());
+        }
+
+        List<Integer> ends = new ArrayList<>();     // Predicted end of each function
+        int depth = 0;
+        boolean header = false;     // Whether the tokens are in a function's header, between its FUN and DO
+        for (int i = position(); i < size; i++) {
+            Token.Keyword keyword = list != null ? list.get(i).getKeyword() : tokens.buffer.getKeyword(i);
+            if (depth == 0) {
+                if (keyword == Token.Keyword.FUN && !header) {
+                    header = true;
+                }
+                else if (!header || (keyword != null && keyword != Token.Keyword.DO)) {     // Anything else is an error left to the sequential parse
+                    break;
+                }
+                else if (keyword == Token.Keyword.DO) {
+                    header = false;
+                    depth++;
+                }
+            }
+            else if (keyword == Token.Keyword.DO || keyword == Token.Keyword.SWITCH) {
+                depth++;
+            }
+            else if (keyword == Token.Keyword.END && --depth == 0) {
+                ends.add(i + 1);
+            }
+        }
+
+        int batchSize = Math.max(1, ends.size() / (pool.getParallelism() * 4));
+        List<ForkJoinTask<Batch>> tasks = new ArrayList<>();
+        for (int i = 0; i < ends.size(); i += batchSize) {
+            int start = i == 0 ? position() : ends.get(i - 1);
+            List<Integer> batch = ends.subList(i, Math.min(i + batchSize, ends.size()));
+            tasks.add(pool.submit(() -> parseBatch(start, batch)));
+        }
+        List<Ast.Function> functions = new ArrayList<>();
+        int end = position();   // End of the functions parsed in parallel
+        try {
+            for (ForkJoinTask<Batch> task : tasks) {    // Joining in order means the earliest error is the one thrown
+                Batch batch = task.join();
+                functions.addAll(batch.functions);
+                end = batch.end;
+                if (batch.error != null) {
+                    throw batch.error;
+                }
+                else if (!batch.complete) {
+                    break;
+                }
+            }
+        }
+        finally {
+            tasks.forEach(task -> task.cancel(false));
         }
 
+        Parser rest = end == position() ? this : parserAt(end);
+        while (rest.peek(Token.Keyword.FUN)) {  // Whatever the pre-scan could not split is parsed sequentially
+            functions.add(rest.parseFunction());
+        }
+        if (rest.tokens.has(0)) {
+            throw new ParseException("Unexpected token", rest.tokens.index(0));
+        }
         return new Ast.Source(globals, functions);
     }
 
+    /**
+     * Parses the functions starting at the given index which are predicted to
+     * end at the given indices, stopping at the first one which does not.
+     */
+    private Batch parseBatch(int start, List<Integer> ends) {
+        Parser parser = parserAt(start);
+        Batch batch = new Batch(start);
+        for (int end : ends) {
+            try {
+                Ast.Function function = parser.parseFunction();
+                if (parser.position() != end) {     // The pre-scan was wrong, so the function is parsed again sequentially
+                    return batch;
+                }
+                batch.functions.add(function);
+                batch.end = end;
+            }
+            catch (ParseException e) {
+                batch.error = e;
+                return batch;
+            }
+        }
+        batch.complete = true;
+        return batch;
+    }
+
+    /**
+     * Returns a new parser over the same tokens, starting at the given index.
+     */
+    private Parser parserAt(int start) {
+        return list != null ? new Parser(list, start) : new Parser(tokens.buffer, start);
+    }
+
+    /**
+     * Returns the index of the current token in the whole token list or
+     * buffer.
+     */
+    int position() {
+        return offset + tokens.index;
+    }
+
+    /**
+     * Parses the {@code source} rule, but instead of throwing at the first
+     * error, records every error in the given list and returns the globals
+     * and functions which parsed. After an error in a statement, the parser
+     * skips to the end of that statement (see {@link #synchronize(int)}) and
+     * continues with the rest of the block. After any other error, it skips
+     * to the next {@code FUN}, {@code VAR}, {@code VAL} or {@code LIST}.
+     */
+    public Ast.Source parseSource(List<ParseException> errors) {
+        List<Ast.Global> globals = new ArrayList<>();
+        List<Ast.Function> functions = new ArrayList<>();
+        this.errors = errors;
+        try {
+            while (tokens.has(0)) {
+                try {
+                    if (peek(GLOBALS)) {
+                        if (!functions.isEmpty()) {     // Globals must come first, but the global can still be checked
+                            errors.add(new ParseException("Unexpected token", tokens.index(0)));
+                        }
+                        globals.add(parseGlobal());
+                    }
+                    else if (peek(Token.Keyword.FUN)) {
+                        functions.add(parseFunction());
+                    }
+                    else {
+                        throw new ParseException("Unexpected token", tokens.index(0));
+                    }
+                }
+                catch (ParseException e) {
+                    errors.add(e);
+                    while (tokens.has(0) && !peek(TOP_LEVEL)) {
+                        tokens.advance();
+                    }
+                }
+            }
+        }
+        finally {
+            this.errors = null;
+        }
+        return new Ast.Source(globals, functions);
+    }
+
+    /**
+     * Parses the {@code source} rule in the same way as {@link #parseSource()},
+     * but without recursing for nested expressions and blocks, so any depth
+     * of nesting is parsed in linear time without a
+     * {@link StackOverflowError}. Nested groups, accesses and calls are
+     * parsed by {@link #parseExpressionIteratively()} and nested if, switch
+     * and while statements by {@link #parseBlockIteratively()}, each keeping
+     * the enclosing nodes on a stack on the heap. The result and any
+     * {@link ParseException} are identical to {@link #parseSource()}.
+     *
+     * Deep trees should then be processed with {@link AstTraversal}, since
+     * the recursive visitors, as well as {@link Object#equals(Object)} and
+     * {@link Object#toString()} of the AST, would still overflow the stack.
+     */
+    public Ast.Source parseSourceIterative() throws ParseException {
+        iterative = true;
+        try {
+            return parseSource();
+        }
+        finally {
+            iterative = false;
+        }
+    }
+
     /**
      * Parses the {@code field} rule. This method should only be called if the
      * next tokens start a field, aka {@code LET}.
@@ -62,16 +331,16 @@ public final class Parser {
         Ast.Global result;
 
         // What kind of global is being parsed?
-        if (peek("LIST")) {
+        if (peek(Token.Keyword.LIST)) {
             result = parseList();
         }
-        else if (peek("VAR")) {
+        else if (peek(Token.Keyword.VAR)) {
             result = parseMutable();
         }
         else  {
             result = parseImmutable();
         }
-        mustMatch(";");
+        mustMatch(Token.Operator.SEMICOLON);
 
         return result;
     }
@@ -82,7 +351,7 @@ public final class Parser {
      */
     public Ast.Global parseList() throws ParseException {
         // Progress past the keyword:
-        match("LIST");
+        match(Token.Keyword.LIST);
         // Declare variables:
         String name;
         String type;
@@ -91,20 +360,20 @@ public final class Parser {
 
         // Get the name of the list variable:
         mustMatch(Token.Type.IDENTIFIER);
-        name = tokens.get(-1).getLiteral();
+        name = name(-1);
 
         // Get the type of the list:
-        mustMatch(":");
+        mustMatch(Token.Operator.COLON);
         mustMatch(Token.Type.IDENTIFIER);
-        type = tokens.get(-1).getLiteral();
+        type = name(-1);
 
-        mustMatch("=");
-        mustMatch("[");
+        mustMatch(Token.Operator.ASSIGN);
+        mustMatch(Token.Operator.LEFT_BRACKET);
         do {
             expressionList.add(parseExpression());
-            checkCommas("]");
+            checkCommas(Token.Operator.RIGHT_BRACKET);
         }
-        while (!match("]"));
+        while (!match(Token.Operator.RIGHT_BRACKET));
         list = new Ast.Expression.PlcList(expressionList);
 
         // Use the new Ast.Global constructor to return the object:
@@ -117,7 +386,7 @@ public final class Parser {
      */
     public Ast.Global parseMutable() throws ParseException {
         // Progress past the keyword:
-        match("VAR");
+        match(Token.Keyword.VAR);
         // Declare variables:
         String name;
         String type;
@@ -125,13 +394,13 @@ public final class Parser {
 
         // Get the variable name:
         mustMatch(Token.Type.IDENTIFIER);
-        name = tokens.get(-1).getLiteral();
+        name = name(-1);
         // Get the variable type:
-        mustMatch(":");
+        mustMatch(Token.Operator.COLON);
         mustMatch(Token.Type.IDENTIFIER);
-        type = tokens.get(-1).getLiteral();
+        type = name(-1);
 
-        if (match("=")) {
+        if (match(Token.Operator.ASSIGN)) {
             expression = Optional.of(parseExpression());
         }
 
@@ -144,7 +413,7 @@ public final class Parser {
      */
     public Ast.Global parseImmutable() throws ParseException {
         // Progress past the keyword:
-        match("VAL");
+        match(Token.Keyword.VAL);
         // Declare variables:
         String name;
         String type;
@@ -152,13 +421,13 @@ public final class Parser {
 
         // Get the variable name:
         mustMatch(Token.Type.IDENTIFIER);
-        name = tokens.get(-1).getLiteral();
+        name = name(-1);
         // Get the variable type:
-        mustMatch(":");
+        mustMatch(Token.Operator.COLON);
         mustMatch(Token.Type.IDENTIFIER);
-        type = tokens.get(-1).getLiteral();
+        type = name(-1);
 
-        mustMatch("=");
+        mustMatch(Token.Operator.ASSIGN);
         expression = Optional.of(parseExpression());
 
         return new Ast.Global(name, type,false, expression);
@@ -170,7 +439,7 @@ public final class Parser {
      */
     public Ast.Function parseFunction() throws ParseException {
         // Progress past the keyword:
-        match("FUN");
+        match(Token.Keyword.FUN);
         // Declare variables:
         String name;
         List<String> paramNames = new ArrayList<>();
@@ -179,29 +448,29 @@ public final class Parser {
         List<Ast.Statement> statements;
 
         mustMatch(Token.Type.IDENTIFIER);
-        name = tokens.get(-1).getLiteral();
-        mustMatch("(");
+        name = name(-1);
+        mustMatch(Token.Operator.LEFT_PAREN);
 
-        while (!match(")")) {
+        while (!match(Token.Operator.RIGHT_PAREN)) {
             // Get the parameter name:
             mustMatch(Token.Type.IDENTIFIER);
-            paramNames.add(tokens.get(-1).getLiteral());
+            paramNames.add(name(-1));
             // Get the parameter type:
-            mustMatch(":");
+            mustMatch(Token.Operator.COLON);
             mustMatch(Token.Type.IDENTIFIER);
-            paramTypes.add(tokens.get(-1).getLiteral());
+            paramTypes.add(name(-1));
 
-            checkCommas(")");
+            checkCommas(Token.Operator.RIGHT_PAREN);
         }
         // Get the return type, if present:
-        if (match(":")) {
+        if (match(Token.Operator.COLON)) {
             mustMatch(Token.Type.IDENTIFIER);
-            retType = Optional.of(tokens.get(-1).getLiteral());
+            retType = Optional.of(name(-1));
         }
         // Parse the function block:
-        mustMatch("DO");
+        mustMatch(Token.Keyword.DO);
         statements = parseBlock();
-        mustMatch("END");
+        mustMatch(Token.Keyword.END);
 
         return new Ast.Function(name, paramNames, paramTypes, retType, statements);
     }
@@ -211,46 +480,168 @@ public final class Parser {
      * preceding token indicates the opening a block.
      */
     public List<Ast.Statement> parseBlock() throws ParseException {
+        if (iterative) {
+            return parseBlockIteratively();
+        }
         List<Ast.Statement> statements = new ArrayList<>();
 
-        while (!peek("END") && !peek("ELSE") && !peek("CASE") && !peek("DEFAULT")) {    // All the cases where a block ends
-            statements.add(parseStatement());
+        while (!peek(BLOCK_ENDS)) {
+            if (errors == null) {
+                statements.add(parseStatement());
+            }
+            else if (!tokens.has(0) || peek(TOP_LEVEL)) {   // The block is missing its end, which the enclosing rule reports
+                break;
+            }
+            else {
+                boolean compound = peek(Token.Keyword.SWITCH);  // A switch has no DO, so it is already open once its keyword is matched
+                try {
+                    statements.add(parseStatement());
+                }
+                catch (ParseException e) {
+                    errors.add(e);
+                    synchronize(compound ? 1 : 0);
+                }
+            }
         }
 
         return statements;
     }
 
+    /**
+     * Parses the {@code block} rule like {@link #parseBlock()}, but with the
+     * if, switch and while statements being parsed kept on a stack instead
+     * of parsing their blocks recursively. Each {@link Block} is closed once
+     * the next token ends its block, making the same checks in the same
+     * order as the recursive methods so the same errors are thrown.
+     */
+    private List<Ast.Statement> parseBlockIteratively() throws ParseException {
+        List<Block> stack = new ArrayList<>();
+        Block block = new Block(null, null);    // The block being parsed for the caller
+        while (true) {
+            if (!peek(BLOCK_ENDS)) {
+                if (match(Token.Keyword.IF) || match(Token.Keyword.WHILE)) {
+                    Token.Keyword keyword = tokens.keyword(-1);
+                    Ast.Expression condition = parseExpression();
+                    mustMatch(Token.Keyword.DO);
+                    stack.add(block);
+                    block = new Block(keyword, condition);
+                }
+                else if (match(Token.Keyword.SWITCH)) {
+                    Ast.Expression condition = parseExpression();
+                    stack.add(block);
+                    block = new Block(Token.Keyword.SWITCH, condition);
+                    parseCaseIteratively(block);
+                }
+                else {
+                    block.statements.add(parseStatement());
+                }
+                continue;
+            }
+            Ast.Statement statement;
+            if (block.keyword == null) {
+                return block.statements;
+            }
+            else if (block.keyword == Token.Keyword.IF) {
+                if (block.thenStatements == null && match(Token.Keyword.ELSE)) {
+                    block.thenStatements = block.statements;
+                    block.statements = new ArrayList<>();
+                    continue;
+                }
+                mustMatch(Token.Keyword.END);
+                statement = block.thenStatements == null
+                        ? new Ast.Statement.If(block.condition, block.statements, new ArrayList<>())
+                        : new Ast.Statement.If(block.condition, block.thenStatements, block.statements);
+            }
+            else if (block.keyword == Token.Keyword.WHILE) {
+                mustMatch(Token.Keyword.END);
+                statement = new Ast.Statement.While(block.condition, block.statements);
+            }
+            else {
+                block.cases.add(new Ast.Statement.Case(block.value, block.statements));
+                if (block.value.isPresent()) {  // Only the default case has no value, and is always last
+                    block.statements = new ArrayList<>();
+                    parseCaseIteratively(block);
+                    continue;
+                }
+                mustMatch(Token.Keyword.END);
+                statement = new Ast.Statement.Switch(block.condition, block.cases);
+            }
+            block = stack.remove(stack.size() - 1);
+            block.statements.add(statement);
+        }
+    }
+
+    /**
+     * Starts the next case of the switch statement being parsed by
+     * {@link #parseBlockIteratively()}, which is the default case unless the
+     * next token is {@code CASE}.
+     */
+    private void parseCaseIteratively(Block block) throws ParseException {
+        if (match(Token.Keyword.CASE)) {
+            block.value = Optional.of(parseExpression());
+            mustMatch(Token.Operator.COLON);
+        }
+        else {
+            mustMatch(Token.Keyword.DEFAULT);
+            block.value = Optional.empty();
+        }
+    }
+
+    /**
+     * Skips the rest of a statement after an error, stopping after a
+     * {@code ;} or after the {@code END} closing the statement, or before the
+     * end of the enclosing block or a top-level keyword. Blocks opened by
+     * {@code DO} or {@code SWITCH} are skipped as a whole, starting from the
+     * given number of blocks the statement already opened.
+     */
+    private void synchronize(int depth) {
+        while (tokens.has(0) && !peek(TOP_LEVEL) && (depth > 0 || !peek(BLOCK_ENDS))) {
+            boolean end = peek(Token.Keyword.END);
+            boolean semicolon = peek(Token.Operator.SEMICOLON);
+            if (peek(Token.Keyword.DO) || peek(Token.Keyword.SWITCH)) {
+                depth++;
+            }
+            else if (end) {
+                depth--;
+            }
+            tokens.advance();
+            if (depth == 0 && (end || semicolon)) {
+                return;
+            }
+        }
+    }
+
     /**
      * Parses the {@code statement} rule and delegates to the necessary method.
      * If the next tokens do not start a declaration, if, while, or return
      * statement, then it is an expression/assignment statement.
      */
     public Ast.Statement parseStatement() throws ParseException {
-        if (match("LET")) {
+        if (match(Token.Keyword.LET)) {
             return parseDeclarationStatement();
         }
-        else if (match("SWITCH")) {
+        else if (match(Token.Keyword.SWITCH)) {
             return parseSwitchStatement();
         }
-        else if (match("IF")) {
+        else if (match(Token.Keyword.IF)) {
             return parseIfStatement();
         }
-        else if (match("WHILE")) {
+        else if (match(Token.Keyword.WHILE)) {
             return parseWhileStatement();
         }
-        else if (match("RETURN")) {
+        else if (match(Token.Keyword.RETURN)) {
             return parseReturnStatement();
         }
         // Functionality for parsing expression and assignment statements:
         else {
             Ast.Expression expression = parseExpression();
-            if (expression instanceof Ast.Expression.Access && match("=")) {    // An assignment expression
+            if (expression instanceof Ast.Expression.Access && match(Token.Operator.ASSIGN)) {    // An assignment expression
                 Ast.Expression rightSide = parseExpression();
-                mustMatch(";");
+                mustMatch(Token.Operator.SEMICOLON);
                 return new Ast.Statement.Assignment(expression, rightSide);
             }
             else  {
-                mustMatch(";");
+                mustMatch(Token.Operator.SEMICOLON);
                 return new Ast.Statement.Expression(expression);
             }
         }
@@ -269,17 +660,17 @@ public final class Parser {
 
         // Get the variable name:
         mustMatch(Token.Type.IDENTIFIER);
-        name = tokens.get(-1).getLiteral();
+        name = name(-1);
         // Get the variable type (if present):
-        if (match(":")) {
+        if (match(Token.Operator.COLON)) {
             mustMatch(Token.Type.IDENTIFIER);
-            type = Optional.of(tokens.get(-1).getLiteral());
+            type = Optional.of(name(-1));
         }
 
-        if (match("=")) {   // Receiver is being initialized
+        if (match(Token.Operator.ASSIGN)) {   // Receiver is being initialized
             rightSide = Optional.of(parseExpression());
         }
-        mustMatch(";");
+        mustMatch(Token.Operator.SEMICOLON);
 
         return new Ast.Statement.Declaration(name, type, rightSide);
     }
@@ -294,12 +685,12 @@ public final class Parser {
         List<Ast.Statement> elseBlock = new ArrayList<>();
 
         Ast.Expression expression = parseExpression();
-        mustMatch("DO");
+        mustMatch(Token.Keyword.DO);
         ifBlock = parseBlock();
-        if (match("ELSE")) {
+        if (match(Token.Keyword.ELSE)) {
             elseBlock = parseBlock();
         }
-        mustMatch("END");
+        mustMatch(Token.Keyword.END);
 
         return new Ast.Statement.If(expression, ifBlock, elseBlock);
     }
@@ -313,12 +704,12 @@ public final class Parser {
         List<Ast.Statement.Case> cases = new ArrayList<>();
         Ast.Expression firstExpression = parseExpression();
 
-        while (match("CASE")) {
+        while (match(Token.Keyword.CASE)) {
             cases.add(parseCaseStatement());
         }
-        mustMatch("DEFAULT");
+        mustMatch(Token.Keyword.DEFAULT);
         cases.add(parseCaseStatement());
-        mustMatch("END");
+        mustMatch(Token.Keyword.END);
 
         return new Ast.Statement.Switch(firstExpression, cases);
     }
@@ -332,9 +723,9 @@ public final class Parser {
         Optional<Ast.Expression> expression = Optional.empty();
         List<Ast.Statement> block;
 
-        if (!tokens.get(-1).getLiteral().equals("DEFAULT")) {
+        if (tokens.keyword(-1) != Token.Keyword.DEFAULT) {
             expression = Optional.of(parseExpression());
-            mustMatch(":");
+            mustMatch(Token.Operator.COLON);
         }
         block = parseBlock();
 
@@ -350,9 +741,9 @@ public final class Parser {
         List<Ast.Statement> block;
         Ast.Expression expression = parseExpression();
 
-        mustMatch("DO");
+        mustMatch(Token.Keyword.DO);
         block = parseBlock();
-        mustMatch("END");
+        mustMatch(Token.Keyword.END);
 
         return new Ast.Statement.While(expression, block);
     }
@@ -364,7 +755,7 @@ public final class Parser {
      */
     public Ast.Statement.Return parseReturnStatement() throws ParseException {
         Ast.Expression expression = parseExpression();
-        mustMatch(";");
+        mustMatch(Token.Operator.SEMICOLON);
         return new Ast.Statement.Return(expression);
     }
 
@@ -372,69 +763,160 @@ public final class Parser {
      * Parses the {@code expression} rule.
      */
     public Ast.Expression parseExpression() throws ParseException {
-        return parseLogicalExpression();
+        return iterative ? parseExpressionIteratively() : parseBinaryExpression(LOGICAL);
     }
 
     /**
      * Parses the {@code logical-expression} rule.
      */
     public Ast.Expression parseLogicalExpression() throws ParseException {
-        Ast.Expression left = null;
-        Ast.Expression right = null;
-        left = parseComparisonExpression();
-        while (match("&&") || match("||")) {
-            String operator = tokens.get(-1).getLiteral();
-            right = parseComparisonExpression();
-            left = new Ast.Expression.Binary(operator, left, right);
-        }
-        return left;
+        return parseBinaryExpression(LOGICAL);
     }
 
     /**
      * Parses the {@code equality-expression} rule.
      */
     public Ast.Expression parseComparisonExpression() throws ParseException {
-        Ast.Expression left = null;
-        Ast.Expression right = null;
-        left = parseAdditiveExpression();
-        while (match(">") || match("<") || match("==") || match("!=")) {
-            String operator = tokens.get(-1).getLiteral();
-            right = parseAdditiveExpression();
-            left = new Ast.Expression.Binary(operator, left, right);
-        }
-        return left;
+        return parseBinaryExpression(COMPARISON);
     }
 
     /**
      * Parses the {@code additive-expression} rule.
      */
     public Ast.Expression parseAdditiveExpression() throws ParseException {
-        Ast.Expression left = null;
-        Ast.Expression right = null;
-        left = parseMultiplicativeExpression();
-        while (match("+") || match("-")) {
-            String operator = tokens.get(-1).getLiteral();
-            right = parseMultiplicativeExpression();
-            left = new Ast.Expression.Binary(operator, left, right);
-        }
-        return left;
+        return parseBinaryExpression(ADDITIVE);
     }
 
     /**
      * Parses the {@code multiplicative-expression} rule.
      */
     public Ast.Expression parseMultiplicativeExpression() throws ParseException {
-        Ast.Expression left = null;
-        Ast.Expression right = null;
-        left = parsePrimaryExpression();
-        while (match("*") || match("/") || match("^")) {
-            String operator = tokens.get(-1).getLiteral();
-            right = parsePrimaryExpression();
+        return parseBinaryExpression(MULTIPLICATIVE);
+    }
+
+    /**
+     * Parses a chain of binary operators with a precedence of at least the
+     * given minimum by precedence climbing. Each operand is a primary
+     * expression followed by any operators binding tighter than the one
+     * before it, which is parsed by recursing with a higher minimum. Since an
+     * operator only takes the operators binding strictly tighter as its right
+     * operand, operators of the same precedence associate to the left, giving
+     * the same tree as one rule per precedence level.
+     */
+    private Ast.Expression parseBinaryExpression(int minimum) throws ParseException {
+        Ast.Expression left = parsePrimaryExpression();
+        while (tokens.has(0)) {
+            Token.Operator operator = tokens.operator(0);
+            int precedence = operator != null ? PRECEDENCE[operator.ordinal()] : 0;
+            if (precedence < minimum) {     // Also stops at anything which is not a binary operator
+                break;
+            }
+            tokens.advance();
+            Ast.Expression right = parseBinaryExpression(precedence + 1);
             left = new Ast.Expression.Binary(operator, left, right);
         }
         return left;
     }
 
+    /**
+     * Parses the {@code expression} rule without recursion. Binary operators
+     * are parsed by the shunting-yard algorithm, with the operands and the
+     * operators waiting for their right operand on stacks. An operator is
+     * applied once an operator of the same or a lower precedence follows, so
+     * operators associate to the left as with precedence climbing. Groups,
+     * accesses and calls push a {@link Nesting} holding what to build from
+     * the expression inside them once it is closed.
+     */
+    private Ast.Expression parseExpressionIteratively() throws ParseException {
+        operands.clear();   // Anything left by an expression which threw
+        operators.clear();
+        nestings.clear();
+        Nesting nesting = Nesting.OUTERMOST;
+        boolean operand = true;     // Whether an operand is expected next
+        while (true) {
+            if (operand) {
+                Ast.Expression expression = parseLiteral();
+                if (expression == null && match(Token.Operator.LEFT_PAREN)) {
+                    nestings.add(nesting);
+                    nesting = new Nesting(Token.Operator.RIGHT_PAREN, null, null, operators.size());
+                    continue;
+                }
+                else if (expression == null && match(Token.Type.IDENTIFIER)) {
+                    String name = name(-1);
+                    if (match(Token.Operator.LEFT_BRACKET)) {
+                        nestings.add(nesting);
+                        nesting = new Nesting(Token.Operator.RIGHT_BRACKET, name, null, operators.size());
+                        continue;
+                    }
+                    else if (match(Token.Operator.LEFT_PAREN)) {
+                        Vector<Ast.Expression> parameterList = new Vector<>();
+                        if (!match(Token.Operator.RIGHT_PAREN)) {
+                            nestings.add(nesting);
+                            nesting = new Nesting(Token.Operator.RIGHT_PAREN, name, parameterList, operators.size());
+                            continue;
+                        }
+                        expression = new Ast.Expression.Function(name, parameterList);
+                    }
+                    else {
+                        expression = new Ast.Expression.Access(Optional.empty(), name);
+                    }
+                }
+                else if (expression == null) {
+                    throw new ParseException("Expected an expression", errorIndex());
+                }
+                operands.add(expression);
+                operand = false;
+                continue;
+            }
+
+            Token.Operator operator = tokens.has(0) ? tokens.operator(0) : null;
+            int precedence = operator != null ? PRECEDENCE[operator.ordinal()] : 0;
+            if (precedence > 0) {
+                while (operators.size() > nesting.operators && PRECEDENCE[operators.get(operators.size() - 1).ordinal()] >= precedence) {
+                    reduce();
+                }
+                operators.add(operator);
+                tokens.advance();
+                operand = true;
+                continue;
+            }
+            while (operators.size() > nesting.operators) {     // The expression inside the nesting is complete
+                reduce();
+            }
+            Ast.Expression expression = operands.remove(operands.size() - 1);
+            if (nesting.closing == null) {
+                return expression;
+            }
+            else if (nesting.arguments != null) {
+                nesting.arguments.add(expression);
+                checkCommas(Token.Operator.RIGHT_PAREN);
+                if (!match(Token.Operator.RIGHT_PAREN)) {   // Parse the next argument
+                    operand = true;
+                    continue;
+                }
+                expression = new Ast.Expression.Function(nesting.name, nesting.arguments);
+            }
+            else {
+                mustMatch(nesting.closing);
+                expression = nesting.name == null
+                        ? new Ast.Expression.Group(expression)
+                        : new Ast.Expression.Access(Optional.of(expression), nesting.name);
+            }
+            nesting = nestings.remove(nestings.size() - 1);
+            operands.add(expression);
+        }
+    }
+
+    /**
+     * Replaces the top two operands with the binary expression applying the
+     * top operator to them.
+     */
+    private void reduce() {
+        Ast.Expression right = operands.remove(operands.size() - 1);
+        Ast.Expression left = operands.remove(operands.size() - 1);
+        operands.add(new Ast.Expression.Binary(operators.remove(operators.size() - 1), left, right));
+    }
+
     /**
      * Parses the {@code primary-expression} rule. This is the top-level rule
      * for expressions and includes literal values, grouping, variables, and
@@ -442,52 +924,27 @@ public final class Parser {
      * not strictly necessary.
      */
     public Ast.Expression parsePrimaryExpression() throws ParseException {
-        if (match("NIL")) {
-            return new Ast.Expression.Literal(null);
+        Ast.Expression literal = parseLiteral();
+        if (literal != null) {
+            return literal;
         }
-        else if (match("TRUE")) {
-            return new Ast.Expression.Literal(Boolean.TRUE);
-        }
-        else if (match("FALSE")) {
-            return new Ast.Expression.Literal(Boolean.FALSE);
-        }
-        else if (match(Token.Type.INTEGER)) {
-            return new Ast.Expression.Literal(new BigInteger(tokens.get(-1).getLiteral()));
-        }
-        else if (match(Token.Type.DECIMAL)) {
-            return new Ast.Expression.Literal(new BigDecimal(tokens.get(-1).getLiteral()));
-        }
-        else if (match(Token.Type.CHARACTER)) {
-            String character = tokens.get(-1).getLiteral();
-            character = character.substring(1, character.length() - 1);    // Remove opening and closing quotes
-            // Replace all literal escape sequences with their actual value:
-            character = replaceEscapes(character);
-            return new Ast.Expression.Literal(character.charAt(0));
-        }
-        else if (match(Token.Type.STRING)) {
-            String string = tokens.get(-1).getLiteral();
-            string = string.substring(1, string.length() - 1);  // Remove opening and closing quotes
-            // Replace all literal escape sequences with their actual value:
-            string = replaceEscapes(string);
-            return new Ast.Expression.Literal(string);
-        }
-        else if (match("(")) {
+        else if (match(Token.Operator.LEFT_PAREN)) {
             Ast.Expression expression = parseExpression();
-            mustMatch(")");
+            mustMatch(Token.Operator.RIGHT_PAREN);
             return new Ast.Expression.Group(expression);
         }
         else if (match(Token.Type.IDENTIFIER)) {
-            String name = tokens.get(-1).getLiteral();
-            if (match("[")) {
+            String name = name(-1);
+            if (match(Token.Operator.LEFT_BRACKET)) {
                 Ast.Expression expression = parseExpression();
-                mustMatch("]");
+                mustMatch(Token.Operator.RIGHT_BRACKET);
                 return new Ast.Expression.Access(Optional.of(expression), name);
             }
-            else if (match("(")) {
+            else if (match(Token.Operator.LEFT_PAREN)) {
                 Vector<Ast.Expression> parameterList = new Vector<>();  // Vector to collect the function arguments
-                while (!match(")")) {
+                while (!match(Token.Operator.RIGHT_PAREN)) {
                     parameterList.add(parseExpression());
-                    checkCommas(")");
+                    checkCommas(Token.Operator.RIGHT_PAREN);
                 }
                 return new Ast.Expression.Function(name, parameterList);
             }
@@ -495,81 +952,179 @@ public final class Parser {
                 return new Ast.Expression.Access(Optional.empty(), name);
             }
         }
-        try {
-            throw new ParseException("Expected an expression", tokens.get(0).getIndex());
+        throw new ParseException("Expected an expression", errorIndex());
+    }
+
+    /**
+     * Parses a literal from the {@code primary-expression} rule, returning
+     * {@code null} without advancing if the next token is not a literal.
+     */
+    private Ast.Expression parseLiteral() {
+        if (match(Token.Keyword.NIL)) {
+            return new Ast.Expression.Literal(null);
         }
-        catch (IndexOutOfBoundsException e) {
-            throw new ParseException("Expected an expression", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        else if (match(Token.Keyword.TRUE)) {
+            return new Ast.Expression.Literal(Boolean.TRUE);
+        }
+        else if (match(Token.Keyword.FALSE)) {
+            return new Ast.Expression.Literal(Boolean.FALSE);
+        }
+        else if (match(Token.Type.INTEGER)) {
+            if (tokens.scale(-1) < 0) {     // The lexer did not parse the value, so it may not fit in a long
+                return new Ast.Expression.Literal(new BigInteger(tokens.literal(-1)));
+            }
+            long value = tokens.unscaledValue(-1);
+            return new Ast.Expression.Literal(BigInteger.valueOf(value), value);
+        }
+        else if (match(Token.Type.DECIMAL)) {
+            int scale = tokens.scale(-1);
+            if (scale < 0) {
+                return new Ast.Expression.Literal(new BigDecimal(tokens.literal(-1)));
+            }
+            long unscaled = tokens.unscaledValue(-1);
+            return new Ast.Expression.Literal(BigDecimal.valueOf(unscaled, scale), Token.toDouble(unscaled, scale));
+        }
+        else if (match(Token.Type.CHARACTER)) {
+            return new Ast.Expression.Literal(tokens.value(-1).charAt(0));    // Escapes are already decoded by the lexer
+        }
+        else if (match(Token.Type.STRING)) {
+            return new Ast.Expression.Literal(tokens.value(-1));
+        }
+        return null;
+    }
+
+    /**
+     * Gives the operators the given precedence, where higher precedences bind
+     * tighter. Any operator in the table is parsed as a binary expression.
+     */
+    private static void precedence(int precedence, Token.Operator... operators) {
+        for (Token.Operator operator : operators) {
+            PRECEDENCE[operator.ordinal()] = precedence;
+        }
+    }
+
+    /**
+     * Returns the literal of the token at the given offset for use as a name
+     * or operator in the AST, sharing one String instance between every
+     * occurrence of the same literal.
+     */
+    private String name(int offset) {
+        String literal = tokens.literal(offset);
+        String name = names.putIfAbsent(literal, literal);
+        return name != null ? name : literal;
+    }
+
+    private void mustMatch(Token.Type type) throws ParseException {
+        if (!match(type)) {
+            throw new ParseException("Expected a '" + type + "'", errorIndex());
         }
     }
 
-    private String replaceEscapes(String input) {
-        input = input.replace("\\b", "\b");
-        input = input.replace("\\n", "\n");
-        input = input.replace("\\r", "\r");
-        input = input.replace("\\t", "\t");
-        input = input.replace("\\\"", "\"");
-        input = input.replace("\\'", "'");
-        input = input.replace("\\\\", "\\");
-        return input;
+    private void mustMatch(Token.Keyword keyword) throws ParseException {
+        if (!match(keyword)) {
+            throw new ParseException("Expected a '" + keyword + "'", errorIndex());
+        }
     }
 
-    private void mustMatch(Object pattern) throws ParseException {
-         if (!match(pattern)) {
-             try {
-                 throw new ParseException("Expected a '" + pattern.toString() + "'", tokens.get(0).getIndex());
-             }
-             catch (IndexOutOfBoundsException e) {
-                 throw new ParseException("Expected a '" + pattern.toString() + "'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-             }
-         }
+    private void mustMatch(Token.Operator operator) throws ParseException {
+        if (!match(operator)) {
+            throw new ParseException("Expected a '" + operator + "'", errorIndex());
+        }
     }
 
-    private void checkCommas(Object pattern) {
-        if (match(",")) {
-            if (peek(pattern) || match(",")) {
-                throw new ParseException("Unexpected comma", tokens.get(0).getIndex());
+    private void checkCommas(Token.Operator closing) {
+        if (match(Token.Operator.COMMA)) {
+            if (peek(closing) || match(Token.Operator.COMMA)) {
+                throw new ParseException("Unexpected comma", errorIndex());
             }
         }
         else {
-            if (!peek(pattern)) {
-                throw new ParseException("Expected a '" + pattern.toString() + "'", tokens.get(0).getIndex());
+            if (!peek(closing)) {
+                throw new ParseException("Expected a '" + closing + "'", errorIndex());
             }
         }
     }
 
+    /**
+     * Returns the index to report an error at the current token with, which
+     * is the start of the token or, at the end of the input, just past the
+     * last token.
+     */
+    private int errorIndex() {
+        if (tokens.has(0)) {
+            return tokens.index(0);
+        }
+        return tokens.hasPrevious() ? tokens.index(-1) + tokens.length(-1) : 0;
+    }
+
     /**
      * As in the lexer, returns {@code true} if the current sequence of tokens
      * matches the given patterns. Unlike the lexer, the pattern is not a regex;
      * instead it is either a {@link Token.Type}, which matches if the token's
-     * type is the same, or a {@link String}, which matches if the token's
-     * literal is the same.
+     * type is the same, a {@link Token.Keyword}, which matches if the token is
+     * that keyword, a {@link Token.Operator}, which matches if the token is
+     * that operator, or a {@link String}, which matches if the token's literal
+     * is the same.
      *
      * In other words, {@code Token(IDENTIFIER, "literal")} is matched by both
-     * {@code peek(Token.Type.IDENTIFIER)} and {@code peek("literal")}.
+     * {@code peek(Token.Type.IDENTIFIER)} and {@code peek("literal")}, and
+     * {@code Token(IDENTIFIER, "END")} is also matched by
+     * {@code peek(Token.Keyword.END)}, just as {@code Token(OPERATOR, ";")} is
+     * matched by {@code peek(Token.Operator.SEMICOLON)}.
+     *
+     * Single patterns have their own overloads below, which are used
+     * throughout the parser since they neither allocate a varargs array nor
+     * check the kind of pattern at runtime. Multi-token patterns should be
+     * kept in a constant array so that matching them does not allocate.
      */
     private boolean peek(Object... patterns) {
         for (int i = 0; i < patterns.length; i++) {
-            if (!tokens.has(i)) {
+            if (!peek(i, patterns[i])) {
                 return false;
             }
-            else if (patterns[i] instanceof Token.Type) {
-                if (patterns[i] != tokens.get(i).getType()) {
-                    return false;
-                }
-            }
-            else if (patterns[i] instanceof String) {
-                if (!patterns[i].equals(tokens.get(i).getLiteral())) {
-                    return false;
-                }
-            }
-            else {
-                throw new AssertionError("Invalid pattern object:" + patterns[i].getClass());
-            }
         }
         return true;
     }
 
+    private boolean peek(int offset, Object pattern) {
+        if (pattern instanceof Token.Type) {
+            return tokens.has(offset) && tokens.type(offset) == pattern;
+        }
+        else if (pattern instanceof Token.Keyword) {
+            return tokens.has(offset) && tokens.keyword(offset) == pattern;
+        }
+        else if (pattern instanceof Token.Operator) {
+            return tokens.has(offset) && tokens.operator(offset) == pattern;
+        }
+        else if (pattern instanceof String) {
+            return tokens.has(offset) && tokens.literalEquals(offset, (String) pattern);
+        }
+        throw new AssertionError("Invalid pattern object:" + pattern.getClass());
+    }
+
+    private boolean peek(Token.Type type) {
+        return tokens.has(0) && tokens.type(0) == type;
+    }
+
+    private boolean peek(Token.Keyword keyword) {
+        return tokens.has(0) && tokens.keyword(0) == keyword;
+    }
+
+    private boolean peek(Token.Operator operator) {
+        return tokens.has(0) && tokens.operator(0) == operator;
+    }
+
+    private boolean peek(String literal) {
+        return tokens.has(0) && tokens.literalEquals(0, literal);
+    }
+
+    /**
+     * Returns {@code true} if the current token is any of the keywords.
+     */
+    private boolean peek(Set<Token.Keyword> keywords) {
+        return tokens.has(0) && keywords.contains(tokens.keyword(0));   // Not a keyword is null, which no set contains
+    }
+
     /**
      * As in the lexer, returns {@code true} if {@link #peek(Object...)} is true
      * and advances the token stream.
@@ -584,27 +1139,224 @@ public final class Parser {
         return peek;
     }
 
+    private boolean match(Token.Type type) {
+        return advanceIf(peek(type));
+    }
+
+    private boolean match(Token.Keyword keyword) {
+        return advanceIf(peek(keyword));
+    }
+
+    private boolean match(Token.Operator operator) {
+        return advanceIf(peek(operator));
+    }
+
+    private boolean match(String literal) {
+        return advanceIf(peek(literal));
+    }
+
+    private boolean advanceIf(boolean matched) {
+        if (matched) {
+            tokens.advance();
+        }
+        return matched;
+    }
+
+    /**
+     * An if, switch or while statement being parsed by
+     * {@link #parseBlockIteratively()}, holding the statements of the block
+     * currently being parsed along with the parts of the statement before it.
+     */
+    private static final class Block {
+
+        private final Token.Keyword keyword;    // IF, SWITCH or WHILE, or null for the outermost block
+        private final Ast.Expression condition;
+        private List<Ast.Statement> statements = new ArrayList<>();
+        private List<Ast.Statement> thenStatements = null;     // Set once the else block of an if is reached
+        private final List<Ast.Statement.Case> cases = new ArrayList<>();
+        private Optional<Ast.Expression> value = Optional.empty();     // Value of the current case of a switch
+
+        private Block(Token.Keyword keyword, Ast.Expression condition) {
+            this.keyword = keyword;
+            this.condition = condition;
+        }
+
+    }
+
+    /**
+     * A group, access or call being parsed by
+     * {@link #parseExpressionIteratively()}.
+     */
+    private static final class Nesting {
+
+        private static final Nesting OUTERMOST = new Nesting(null, null, null, 0);
+
+        private final Token.Operator closing;   // RIGHT_PAREN or RIGHT_BRACKET, or null for the whole expression
+        private final String name;              // Name of the list accessed or the function called, null for a group
+        private final List<Ast.Expression> arguments;   // Arguments of a call parsed so far, otherwise null
+        private final int operators;            // Number of operators on the stack before the nesting
+
+        private Nesting(Token.Operator closing, String name, List<Ast.Expression> arguments, int operators) {
+            this.closing = closing;
+            this.name = name;
+            this.arguments = arguments;
+            this.operators = operators;
+        }
+
+    }
+
+    /**
+     * The functions parsed by one task of
+     * {@link #parseSourceParallel(ForkJoinPool)}.
+     */
+    private static final class Batch {
+
+        private final List<Ast.Function> functions = new ArrayList<>();
+        private int end;    // Index after the last function parsed
+        private boolean complete = false;   // Whether every function ended where it was predicted to
+        private ParseException error = null;
+
+        private Batch(int start) {
+            this.end = start;
+        }
+
+    }
+
+    /**
+     * Provides access to the tokens around the current index, reading either
+     * from a {@link TokenBuffer} in place or from a window over a token source
+     * holding the previous token and the tokens looked ahead of the current
+     * one. Source tokens are pulled only when they are first needed and
+     * dropped once they fall out of the window.
+     *
+     * As with a list, accessing a token which is not available throws an
+     * {@link IndexOutOfBoundsException}.
+     */
     private static final class TokenStream {
 
-        private final List<Token> tokens;
+        private static final int WINDOW_SIZE = 8;   // Must be a power of two
+
+        private final TokenBuffer buffer;
+        private final TokenSource source;
+        private final Token[] window = new Token[WINDOW_SIZE];
         private int index = 0;
+        private int fetched = 0;    // Number of tokens pulled from the source so far
+        private boolean exhausted = false;
 
-        private TokenStream(List<Token> tokens) {
-            this.tokens = tokens;
+        private TokenStream(TokenSource source) {
+            this.buffer = null;
+            this.source = source;
+        }
+
+        private TokenStream(TokenBuffer buffer) {
+            this.buffer = buffer;
+            this.source = null;
         }
 
         /**
          * Returns true if there is a token at index + offset.
          */
         public boolean has(int offset) {
-            return index + offset < tokens.size();
+            int position = index + offset;
+            if (buffer != null) {
+                return position < buffer.size();
+            }
+            while (position >= fetched && !exhausted) {
+                if (position - WINDOW_SIZE + 1 >= index) {
+                    throw new IllegalStateException("Lookahead of " + offset + " exceeds the token window");
+                }
+                Token token = source.next();
+                if (token == null) {
+                    exhausted = true;
+                }
+                else {
+                    window[fetched++ & (WINDOW_SIZE - 1)] = token;
+                }
+            }
+            return position < fetched;
         }
 
         /**
-         * Gets the token at index + offset.
+         * Gets the type of the token at index + offset.
          */
-        public Token get(int offset) {
-            return tokens.get(index + offset);
+        public Token.Type type(int offset) {
+            return buffer != null ? buffer.getType(index + offset) : window(offset).getType();
+        }
+
+        /**
+         * Gets the keyword of the token at index + offset, or {@code null} if
+         * it is not a keyword.
+         */
+        public Token.Keyword keyword(int offset) {
+            return buffer != null ? buffer.getKeyword(index + offset) : window(offset).getKeyword();
+        }
+
+        /**
+         * Gets the operator of the token at index + offset, or {@code null} if
+         * it is not one of the operators.
+         */
+        public Token.Operator operator(int offset) {
+            return buffer != null ? buffer.getOperator(index + offset) : window(offset).getOperator();
+        }
+
+        /**
+         * Gets the index into the input of the token at index + offset.
+         */
+        public int index(int offset) {
+            return buffer != null ? buffer.getIndex(index + offset) : window(offset).getIndex();
+        }
+
+        /**
+         * Gets the literal length of the token at index + offset.
+         */
+        public int length(int offset) {
+            return buffer != null ? buffer.getLength(index + offset) : window(offset).getLength();
+        }
+
+        /**
+         * Gets the literal of the token at index + offset.
+         */
+        public String literal(int offset) {
+            return buffer != null ? buffer.getLiteral(index + offset) : window(offset).getLiteral();
+        }
+
+        /**
+         * Gets the value of an integer token, or the unscaled value of a
+         * decimal token, at index + offset as pre-parsed by the lexer.
+         */
+        public long unscaledValue(int offset) {
+            return buffer != null ? buffer.getUnscaledValue(index + offset) : window(offset).getUnscaledValue();
+        }
+
+        /**
+         * Gets the scale of the number token at index + offset, or -1 if its
+         * value was not pre-parsed by the lexer.
+         */
+        public int scale(int offset) {
+            return buffer != null ? buffer.getScale(index + offset) : window(offset).getScale();
+        }
+
+        /**
+         * Gets the value of the string or character literal token at index +
+         * offset, which has its quotes removed and escapes decoded.
+         */
+        public String value(int offset) {
+            return buffer != null ? buffer.getValue(index + offset) : window(offset).getValue();
+        }
+
+        /**
+         * Returns true if the literal of the token at index + offset is exactly
+         * the given string.
+         */
+        public boolean literalEquals(int offset, String literal) {
+            return buffer != null ? buffer.literalEquals(index + offset, literal) : window(offset).literalEquals(literal);
+        }
+
+        /**
+         * Returns true if there is a token before the current one.
+         */
+        public boolean hasPrevious() {
+            return index > 0;
         }
 
         /**
@@ -614,6 +1366,14 @@ public final class Parser {
             index++;
         }
 
+        private Token window(int offset) {
+            int position = index + offset;
+            if (position < 0 || position <= fetched - WINDOW_SIZE || !has(offset)) {
+                throw new IndexOutOfBoundsException("Token " + position + " is not in the token window");
+            }
+            return window[position & (WINDOW_SIZE - 1)];
+        }
+
     }
 
 }
@@ -0,0 +1,80 @@
+package plc.project;
+
+/**
+ * SWAR (SIMD within a register) tests over 8 bytes of input packed into a
+ * little-endian {@code long}, letting the lexer skip runs of bytes a word at
+ * a time. Each test returns a mask with the high bit of every matching byte
+ * set, and {@link #firstByte(long)} finds the first match.
+ *
+ * The tests are exact, with no false positives from borrows between bytes,
+ * so a mask can be used without rechecking the bytes it marks.
+ */
+final class Swar {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH = 0x8080808080808080L;
+    private static final long LOW = 0x7F7F7F7F7F7F7F7FL;
+
+    private Swar() {}
+
+    /**
+     * Returns the index of the first byte marked in the mask, or 8 if there
+     * is none.
+     */
+    static int firstByte(long mask) {
+        return Long.numberOfTrailingZeros(mask) >>> 3;
+    }
+
+    /**
+     * Marks the bytes outside of ASCII.
+     */
+    static long nonAscii(long word) {
+        return word & HIGH;
+    }
+
+    /**
+     * Marks the bytes equal to the given ASCII character.
+     */
+    static long equal(long word, char c) {
+        long x = word ^ (c * ONES);     // Matching bytes become zero
+        return ~(((x & LOW) + LOW) | x | LOW);
+    }
+
+    /**
+     * Marks the bytes in the range [lo, hi] of ASCII characters, which must
+     * only be applied to a word with every high bit cleared.
+     */
+    private static long inRange(long ascii, char lo, char hi) {
+        long x = ascii | HIGH;  // Each byte is at least 0x80, so subtracting an ASCII character never borrows
+        return (x - lo * ONES) & ~(x - (hi + 1) * ONES) & HIGH;
+    }
+
+    /**
+     * Marks the bytes which are not in {@link CharClass#IDENTIFIER_PART},
+     * which is {@code [A-Za-z0-9_-]}.
+     */
+    static long notIdentifierPart(long word) {
+        long ascii = word & LOW;
+        long matches = inRange(ascii | 0x20 * ONES, 'a', 'z')  // Setting 0x20 lowercases letters without making anything else a letter
+                | inRange(ascii, '0', '9')
+                | equal(word, '_')
+                | equal(word, '-');
+        return (~matches | word) & HIGH;    // Bytes outside of ASCII never match
+    }
+
+    /**
+     * Marks the bytes which end a run of string contents, which are quotes,
+     * backslashes and newlines.
+     */
+    static long stringDelimiter(long word) {
+        return equal(word, '"') | equal(word, '\\') | equal(word, '\n');
+    }
+
+    /**
+     * Marks the bytes which are not spaces, ending a run of indentation.
+     */
+    static long notSpace(long word) {
+        return equal(word, ' ') ^ HIGH;
+    }
+
+}
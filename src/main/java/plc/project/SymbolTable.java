@@ -0,0 +1,116 @@
+package plc.project;
+
+/**
+ * An open-addressed hash table interning identifier names. Lookups are keyed
+ * directly on a range of the source characters, so a name is only allocated
+ * the first time it is seen and every later occurrence shares that instance.
+ * The table is preloaded with the {@link Token.Keyword}s so that a lookup also
+ * tells whether the identifier is a reserved word.
+ */
+final class SymbolTable {
+
+    private static final int INITIAL_CAPACITY = 256;   // Must be a power of two
+
+    private String[] names = new String[INITIAL_CAPACITY];
+    private Token.Keyword[] keywords = new Token.Keyword[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    SymbolTable() {
+        for (Token.Keyword keyword : Token.Keyword.values()) {
+            String name = keyword.name();
+            int slot = lookup(name, 0, name.length());
+            keywords[slot] = keyword;
+        }
+    }
+
+    /**
+     * Returns the slot holding the name spelled by the given range of the
+     * source, adding the name to the table if it is not present yet.
+     */
+    int lookup(CharSequence source, int start, int length) {
+        int hash = hash(source, start, length);
+        int mask = names.length - 1;
+        int slot = hash & mask;
+        while (names[slot] != null) {   // Linear probing until the name or an empty slot is found
+            if (hashes[slot] == hash && matches(names[slot], source, start, length)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        names[slot] = source.subSequence(start, start + length).toString();
+        hashes[slot] = hash;
+        size++;
+        if (size * 2 > names.length) {  // Keep the load factor at or below 1/2
+            String name = names[slot];
+            resize();
+            return lookup(name, 0, name.length());
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the slot holding the name spelled by the given range of the
+     * source, or -1 without adding it if it is not present.
+     */
+    int find(CharSequence source, int start, int length) {
+        int hash = hash(source, start, length);
+        int mask = names.length - 1;
+        for (int slot = hash & mask; names[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && matches(names[slot], source, start, length)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    String getName(int slot) {
+        return names[slot];
+    }
+
+    Token.Keyword getKeyword(int slot) {
+        return keywords[slot];
+    }
+
+    private void resize() {
+        String[] oldNames = names;
+        Token.Keyword[] oldKeywords = keywords;
+        int[] oldHashes = hashes;
+        names = new String[oldNames.length * 2];
+        keywords = new Token.Keyword[oldNames.length * 2];
+        hashes = new int[oldNames.length * 2];
+        int mask = names.length - 1;
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (names[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                names[slot] = oldNames[i];
+                keywords[slot] = oldKeywords[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    private static int hash(CharSequence source, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        return hash ^ (hash >>> 16);    // Spread the high bits into the masked low bits
+    }
+
+    private static boolean matches(String name, CharSequence source, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -1,5 +1,9 @@
 package plc.project;
 
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
 public final class Token {
 
     public enum Type {
@@ -11,21 +15,246 @@ public final class Token {
         OPERATOR
     }
 
+    /**
+     * The reserved words of the language. Keywords are still lexed as
+     * {@link Type#IDENTIFIER} tokens, but are tagged with their keyword so the
+     * parser can dispatch on it instead of comparing literals.
+     */
+    public enum Keyword {
+        LIST,
+        VAR,
+        VAL,
+        FUN,
+        LET,
+        SWITCH,
+        CASE,
+        DEFAULT,
+        IF,
+        ELSE,
+        WHILE,
+        DO,
+        END,
+        RETURN,
+        NIL,
+        TRUE,
+        FALSE;
+
+        private static final Map<String, Keyword> KEYWORDS = new HashMap<>();
+        private static final SymbolTable SYMBOLS;   // Holds only the keywords and is never added to, so it can be shared
+
+        static {
+            for (Keyword keyword : values()) {
+                KEYWORDS.put(keyword.name(), keyword);
+            }
+            SYMBOLS = new SymbolTable();
+        }
+
+        /**
+         * Returns the keyword spelled by the given literal, or {@code null} if
+         * it is not a reserved word.
+         */
+        public static Keyword of(String literal) {
+            return KEYWORDS.get(literal);
+        }
+
+        /**
+         * Returns the keyword spelled by the given range of the source, or
+         * {@code null} if it is not a reserved word.
+         */
+        public static Keyword of(CharSequence source, int start, int length) {
+            int slot = SYMBOLS.find(source, start, length);
+            return slot < 0 ? null : SYMBOLS.getKeyword(slot);
+        }
+
+    }
+
+    /**
+     * The operators of the language, which the lexer builds its operator trie
+     * from, so adding an operator here is enough for it to be lexed as one
+     * token. Any other character is still lexed as an operator by itself, but
+     * without an {@link Operator}.
+     */
+    public enum Operator {
+        AND("&&"),
+        OR("||"),
+        EQUAL("=="),
+        NOT_EQUAL("!="),
+        LESS("<"),
+        GREATER(">"),
+        PLUS("+"),
+        MINUS("-"),
+        MULTIPLY("*"),
+        DIVIDE("/"),
+        POWER("^"),
+        ASSIGN("="),
+        LEFT_PAREN("("),
+        RIGHT_PAREN(")"),
+        LEFT_BRACKET("["),
+        RIGHT_BRACKET("]"),
+        COMMA(","),
+        SEMICOLON(";"),
+        COLON(":");
+
+        private static final Map<String, Operator> SYMBOLS = new HashMap<>();
+        private static final OperatorTrie TRIE;
+
+        static {
+            for (Operator operator : values()) {
+                SYMBOLS.put(operator.symbol, operator);
+            }
+            TRIE = new OperatorTrie(values());
+        }
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        /**
+         * Returns the operator spelled by the given literal, or {@code null}
+         * if it is not one of the operators.
+         */
+        public static Operator of(String literal) {
+            return SYMBOLS.get(literal);
+        }
+
+        /**
+         * Returns the operator spelled by the given range of the source, or
+         * {@code null} if it is not one of the operators.
+         */
+        public static Operator of(CharSequence source, int start, int length) {
+            return TRIE.find(source, start, length);
+        }
+
+        /**
+         * Returns the symbol, so the operator reads as it is written in
+         * messages such as "Expected a ';'".
+         */
+        @Override
+        public String toString() {
+            return symbol;
+        }
+
+    }
+
+    private static final double[] POWERS_OF_TEN = {    // Powers of ten which are exactly representable as doubles
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
     private final Type type;
-    private final String literal;
+    private final Keyword keyword;
+    private final Operator operator;
+    private final CharSequence source;
+    private final int length;
+    private String literal;
     private final int index;
+    private String value;   // Decoded contents of a string or character literal, computed on demand if null
+    private final boolean escaped;  // Whether the literal may contain escapes, otherwise the raw contents are the value
+    private final long number;  // Value of an integer literal or unscaled value of a decimal literal, if the scale is set
+    private final int scale;    // Digits after the decimal point, or -1 if the number was not parsed into a long
 
     public Token(Type type, String literal, int index) {
+        this(type, null, literal, index, literal.length(),
+                type == Type.IDENTIFIER ? Keyword.of(literal) : null,
+                type == Type.OPERATOR ? Operator.of(literal) : null,
+                null, true, 0, -1);
+    }
+
+    /**
+     * Creates a token with an already known (possibly {@code null}) keyword,
+     * as done by the lexer's symbol table. The source is only kept to convert
+     * the index, see {@link #getCharIndex()}.
+     */
+    Token(Type type, CharSequence source, String literal, int index, Keyword keyword) {
+        this(type, source, literal, index, literal.length(), keyword, null, null, true, 0, -1);
+    }
+
+    /**
+     * Creates a token whose literal is the range of the source starting at
+     * index. The literal is only copied out of the source the first time
+     * {@link #getLiteral()} is called.
+     */
+    public Token(Type type, CharSequence source, int index, int length) {
+        this(type, source, null, index, length,
+                type == Type.IDENTIFIER ? Keyword.of(source, index, length) : null,
+                type == Type.OPERATOR ? Operator.of(source, index, length) : null,
+                null, true, 0, -1);
+    }
+
+    Token(Type type, CharSequence source, int index, int length, Keyword keyword) {
+        this(type, source, null, index, length, keyword, null, null, true, 0, -1);
+    }
+
+    /**
+     * Creates an operator token with an already known (possibly {@code null})
+     * operator, as found by the lexer's operator trie.
+     */
+    Token(Type type, CharSequence source, String literal, int index, int length, Operator operator) {
+        this(type, source, literal, index, length, null, operator, null, false, 0, -1);
+    }
+
+    /**
+     * Creates a string or character literal token whose contents were already
+     * decoded by the lexer. If the value is {@code null}, it is computed on
+     * demand from the raw contents, which only need decoding if escaped is set.
+     */
+    Token(Type type, CharSequence source, String literal, int index, int length, String value, boolean escaped) {
+        this(type, source, literal, index, length, null, null, value, escaped, 0, -1);
+    }
+
+    /**
+     * Creates an integer or decimal literal token whose value was already
+     * accumulated by the lexer as the unscaled value number / 10^scale. A
+     * negative scale means the value did not fit in a long.
+     */
+    Token(Type type, CharSequence source, String literal, int index, int length, long number, int scale) {
+        this(type, source, literal, index, length, null, null, null, false, number, scale);
+    }
+
+    private Token(Type type, CharSequence source, String literal, int index, int length, Keyword keyword, Operator operator, String value, boolean escaped, long number, int scale) {
         this.type = type;
+        this.keyword = keyword;
+        this.operator = operator;
+        this.source = source;
+        this.length = length;
         this.literal = literal;
         this.index = index;
+        this.value = value;
+        this.escaped = escaped;
+        this.number = number;
+        this.scale = scale;
     }
 
     public Type getType() {
         return type;
     }
 
+    /**
+     * Returns the keyword this token spells, or {@code null} if it is not a
+     * reserved word.
+     */
+    public Keyword getKeyword() {
+        return keyword;
+    }
+
+    /**
+     * Returns the operator this token spells, or {@code null} if it is not
+     * one of the {@link Operator}s.
+     */
+    public Operator getOperator() {
+        return operator;
+    }
+
     public String getLiteral() {
+        if (literal == null) {
+            literal = source.subSequence(index, index + length).toString();
+        }
         return literal;
     }
 
@@ -33,17 +262,121 @@ public final class Token {
         return index;
     }
 
+    /**
+     * Returns the index of the token in the decoded input, which differs from
+     * {@link #getIndex()} if the token was lexed from encoded bytes.
+     */
+    public int getCharIndex() {
+        return source instanceof ByteCharSequence ? ((ByteCharSequence) source).charIndex(index) : index;
+    }
+
+    /**
+     * Returns the value of a string or character literal, which is the
+     * literal without its surrounding quotes and with escapes decoded.
+     */
+    public String getValue() {
+        if (value == null) {
+            CharSequence contents = source != null     // The length is in bytes if the source is, so it only matches the literal's for a String source
+                    ? source.subSequence(index + 1, index + length - 1)
+                    : literal.subSequence(1, length - 1);
+            value = escaped ? Lexer.decodeEscapes(contents) : contents.toString();
+        }
+        return value;
+    }
+
+    /**
+     * Returns true if this string or character literal may contain escapes,
+     * otherwise its raw contents are its value.
+     */
+    boolean isEscaped() {
+        return escaped;
+    }
+
+    /**
+     * Returns true if this integer or decimal literal was parsed into a long by
+     * the lexer, in which case {@link #getUnscaledValue()} and
+     * {@link #getScale()} hold its value. Otherwise the literal has to be
+     * parsed as a {@code BigInteger} or {@code BigDecimal}.
+     */
+    public boolean hasNumber() {
+        return scale >= 0;
+    }
+
+    /**
+     * Returns the value of an integer literal, or the digits of a decimal
+     * literal without its decimal point.
+     */
+    public long getUnscaledValue() {
+        return number;
+    }
+
+    /**
+     * Returns the number of digits after the decimal point of a decimal
+     * literal, which is 0 for integer literals.
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * Returns the value of a decimal literal as a double, computed from the
+     * unscaled value without reparsing the literal where possible.
+     */
+    public double getDoubleValue() {
+        return hasNumber() ? toDouble(number, scale) : Double.parseDouble(getLiteral());
+    }
+
+    /**
+     * Returns true if the literal is exactly the given string. For tokens
+     * created from a source, this compares against the source characters in
+     * place without materializing the literal.
+     */
+    public boolean literalEquals(String literal) {
+        if (this.literal != null) {
+            return this.literal.equals(literal);
+        }
+        return length == literal.length() && regionEquals(source, index, literal);
+    }
+
+    /**
+     * Returns the length of the literal without materializing it.
+     */
+    public int getLength() {
+        return length;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
                 && type == ((Token) obj).type
-                && literal.equals(((Token) obj).literal)
+                && getLiteral().equals(((Token) obj).getLiteral())
                 && index == ((Token) obj).index;
     }
 
     @Override
     public String toString() {
-        return type + "=" + literal + "@" + index;
+        return type + "=" + getLiteral() + "@" + index;
+    }
+
+    /**
+     * Converts the decimal unscaled / 10^scale to the nearest double. If both
+     * the unscaled value and the power of ten are exact doubles, a single
+     * division is correctly rounded, otherwise this falls back to BigDecimal.
+     */
+    static double toDouble(long unscaled, int scale) {
+        if (-(1L << 53) < unscaled && unscaled < 1L << 53 && scale < POWERS_OF_TEN.length) {
+            return unscaled / POWERS_OF_TEN[scale];
+        }
+        return BigDecimal.valueOf(unscaled, scale).doubleValue();
+    }
+
+    private static boolean regionEquals(CharSequence source, int start, String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (source.charAt(start + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
 }
@@ -0,0 +1,321 @@
+package plc.project;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact, struct-of-arrays alternative to {@code List<Token>}. Each token
+ * is stored in primitive arrays as a type ordinal, a tag (the keyword ordinal
+ * of an identifier, the operator ordinal of an operator, or whether a string
+ * or character literal contains escapes), a start index, a length, and for
+ * numbers the pre-parsed unscaled value and its scale. The
+ * literal is read out of the source on demand, and {@link Token} objects are
+ * only created when requested through {@link #get(int)}.
+ */
+public final class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+    private static final Token.Keyword[] KEYWORDS = Token.Keyword.values();
+    private static final Token.Operator[] OPERATORS = Token.Operator.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final CharSequence source;
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    // Keyword ordinal + 1 of an identifier, operator ordinal + 1 of an operator, 1 if a string or character literal may contain escapes, otherwise 0:
+    private byte[] tags = new byte[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private long[] numbers = new long[INITIAL_CAPACITY];
+    private byte[] scales = new byte[INITIAL_CAPACITY];     // Scale of a pre-parsed number, or -1 if there is none
+    private int size = 0;
+
+    public TokenBuffer(CharSequence source) {
+        this.source = source;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends a token covering the given range of the source.
+     */
+    public void add(Token.Type type, int index, int length) {
+        if (type == Token.Type.IDENTIFIER) {
+            add(type, Token.Keyword.of(source, index, length), index, length);
+        }
+        else if (type == Token.Type.OPERATOR) {
+            add(type, tag(Token.Operator.of(source, index, length)), index, length, 0, -1);
+        }
+        else if (type == Token.Type.STRING || type == Token.Type.CHARACTER) {   // Only the lexer knows the literal has no escapes
+            add(type, 1, index, length, 0, -1);
+        }
+        else {
+            add(type, 0, index, length, 0, -1);
+        }
+    }
+
+    /**
+     * Appends a token covering the given range of the source with an already
+     * known (possibly {@code null}) keyword.
+     */
+    public void add(Token.Type type, Token.Keyword keyword, int index, int length) {
+        add(type, tag(keyword), index, length, 0, -1);
+    }
+
+    /**
+     * Appends a token produced by the lexer, keeping its keyword or operator,
+     * whether a literal contains escapes and the value of a number.
+     */
+    void add(Token token) {
+        int tag;
+        if (token.getType() == Token.Type.OPERATOR) {
+            tag = tag(token.getOperator());
+        }
+        else if (token.getType() == Token.Type.STRING || token.getType() == Token.Type.CHARACTER) {
+            tag = token.isEscaped() ? 1 : 0;
+        }
+        else {
+            tag = tag(token.getKeyword());
+        }
+        add(token.getType(), tag, token.getIndex(), token.getLength(), token.getUnscaledValue(), token.getScale());
+    }
+
+    private void add(Token.Type type, int tag, int index, int length, long number, int scale) {
+        if (size == types.length) {     // Grow all arrays geometrically
+            grow(size * 2);
+        }
+        types[size] = (byte) type.ordinal();
+        tags[size] = (byte) tag;
+        starts[size] = index;
+        lengths[size] = length;
+        numbers[size] = number;
+        scales[size] = (byte) (scale <= Byte.MAX_VALUE ? scale : -1);   // Larger scales are rare enough to reparse
+        size++;
+    }
+
+    /**
+     * Appends the tokens [start, end) of another buffer, shifting their
+     * indices by the given amount.
+     */
+    public void addAll(TokenBuffer other, int start, int end, int shift) {
+        int count = end - start;
+        if (size + count > types.length) {
+            grow(Math.max(types.length * 2, size + count));
+        }
+        System.arraycopy(other.types, start, types, size, count);
+        System.arraycopy(other.tags, start, tags, size, count);
+        System.arraycopy(other.lengths, start, lengths, size, count);
+        System.arraycopy(other.numbers, start, numbers, size, count);
+        System.arraycopy(other.scales, start, scales, size, count);
+        for (int i = 0; i < count; i++) {
+            starts[size + i] = other.starts[start + i] + shift;
+        }
+        size += count;
+    }
+
+    public Token.Type getType(int token) {
+        checkIndex(token);
+        return TYPES[types[token]];
+    }
+
+    public Token.Keyword getKeyword(int token) {
+        checkIndex(token);
+        return types[token] != Token.Type.IDENTIFIER.ordinal() || tags[token] == 0 ? null : KEYWORDS[tags[token] - 1];
+    }
+
+    public Token.Operator getOperator(int token) {
+        checkIndex(token);
+        return types[token] != Token.Type.OPERATOR.ordinal() || tags[token] == 0 ? null : OPERATORS[tags[token] - 1];
+    }
+
+    public int getIndex(int token) {
+        checkIndex(token);
+        return starts[token];
+    }
+
+    /**
+     * Returns the index of the token in the decoded source, see
+     * {@link Token#getCharIndex()}.
+     */
+    public int getCharIndex(int token) {
+        checkIndex(token);
+        return source instanceof ByteCharSequence ? ((ByteCharSequence) source).charIndex(starts[token]) : starts[token];
+    }
+
+    public int getLength(int token) {
+        checkIndex(token);
+        return lengths[token];
+    }
+
+    /**
+     * Returns true if the token is a number whose value was parsed into a
+     * long by the lexer, see {@link Token#hasNumber()}.
+     */
+    public boolean hasNumber(int token) {
+        checkIndex(token);
+        return scales[token] >= 0;
+    }
+
+    public long getUnscaledValue(int token) {
+        checkIndex(token);
+        return numbers[token];
+    }
+
+    public int getScale(int token) {
+        checkIndex(token);
+        return scales[token];
+    }
+
+    public String getLiteral(int token) {
+        checkIndex(token);
+        return source.subSequence(starts[token], starts[token] + lengths[token]).toString();
+    }
+
+    /**
+     * Returns the value of a string or character literal token, which is the
+     * literal without its quotes and with escapes decoded.
+     */
+    public String getValue(int token) {
+        checkIndex(token);
+        CharSequence contents = source.subSequence(starts[token] + 1, starts[token] + lengths[token] - 1);
+        return tags[token] != 0 ? Lexer.decodeEscapes(contents) : contents.toString();
+    }
+
+    /**
+     * Returns true if the token's literal is exactly the given string, comparing
+     * against the source characters in place.
+     */
+    public boolean literalEquals(int token, String literal) {
+        checkIndex(token);
+        if (lengths[token] != literal.length()) {
+            return false;
+        }
+        int start = starts[token];
+        for (int i = 0; i < literal.length(); i++) {
+            if (source.charAt(start + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a {@link Token} for the given position in the buffer.
+     */
+    public Token get(int token) {
+        checkIndex(token);
+        Token.Type type = TYPES[types[token]];
+        if (type == Token.Type.INTEGER || type == Token.Type.DECIMAL) {
+            return new Token(type, source, null, starts[token], lengths[token], numbers[token], scales[token]);
+        }
+        if (type == Token.Type.OPERATOR) {
+            return new Token(type, source, null, starts[token], lengths[token], getOperator(token));
+        }
+        if (type == Token.Type.STRING || type == Token.Type.CHARACTER) {
+            return new Token(type, source, null, starts[token], lengths[token], null, tags[token] != 0);
+        }
+        return new Token(type, source, starts[token], lengths[token], getKeyword(token));
+    }
+
+    /**
+     * Returns a read-only list view which creates tokens as they are accessed.
+     */
+    public List<Token> asList() {
+        return new AbstractList<Token>() {
+
+            @Override
+            public Token get(int index) {
+                return TokenBuffer.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+        };
+    }
+
+    /**
+     * Returns the number of bytes written by {@link #encode(ByteBuffer)}.
+     */
+    int encodedSize() {
+        return size * (Long.BYTES + 2 * Integer.BYTES + 3);
+    }
+
+    /**
+     * Writes the tokens to the buffer as the arrays of numbers, starts,
+     * lengths, types, tags and scales in that order, so every array is
+     * aligned if the buffer position is a multiple of 8. The source is not
+     * included.
+     */
+    void encode(ByteBuffer out) {
+        out.asLongBuffer().put(numbers, 0, size);
+        out.position(out.position() + Long.BYTES * size);
+        out.asIntBuffer().put(starts, 0, size);
+        out.position(out.position() + Integer.BYTES * size);
+        out.asIntBuffer().put(lengths, 0, size);
+        out.position(out.position() + Integer.BYTES * size);
+        out.put(types, 0, size);
+        out.put(tags, 0, size);
+        out.put(scales, 0, size);
+    }
+
+    /**
+     * Reads the given number of tokens written by {@link #encode(ByteBuffer)}
+     * over the given source, checking that each one is valid so a damaged
+     * encoding is rejected instead of producing tokens outside the source.
+     */
+    static TokenBuffer decode(CharSequence source, ByteBuffer in, int count) {
+        TokenBuffer buffer = new TokenBuffer(source);
+        buffer.grow(Math.max(count, INITIAL_CAPACITY));
+        in.asLongBuffer().get(buffer.numbers, 0, count);
+        in.position(in.position() + Long.BYTES * count);
+        in.asIntBuffer().get(buffer.starts, 0, count);
+        in.position(in.position() + Integer.BYTES * count);
+        in.asIntBuffer().get(buffer.lengths, 0, count);
+        in.position(in.position() + Integer.BYTES * count);
+        in.get(buffer.types, 0, count);
+        in.get(buffer.tags, 0, count);
+        in.get(buffer.scales, 0, count);
+        for (int i = 0; i < count; i++) {
+            int type = buffer.types[i];
+            int tags = type == Token.Type.IDENTIFIER.ordinal() ? KEYWORDS.length
+                    : type == Token.Type.OPERATOR.ordinal() ? OPERATORS.length
+                    : type == Token.Type.STRING.ordinal() || type == Token.Type.CHARACTER.ordinal() ? 1 : 0;
+            if (type < 0 || type >= TYPES.length || buffer.tags[i] < 0 || buffer.tags[i] > tags || buffer.scales[i] < -1
+                    || buffer.starts[i] < 0 || buffer.lengths[i] < 0 || buffer.starts[i] > source.length() - buffer.lengths[i]) {
+                throw new IllegalArgumentException("Token " + i + " of the encoding is invalid.");
+            }
+        }
+        buffer.size = count;
+        return buffer;
+    }
+
+    private void grow(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        tags = Arrays.copyOf(tags, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        numbers = Arrays.copyOf(numbers, capacity);
+        scales = Arrays.copyOf(scales, capacity);
+    }
+
+    private static int tag(Enum<?> value) {
+        return value == null ? 0 : value.ordinal() + 1;
+    }
+
+    private void checkIndex(int token) {
+        if (token < 0 || token >= size) {
+            throw new IndexOutOfBoundsException("Token " + token + " is out of bounds for size " + size);
+        }
+    }
+
+}
@@ -0,0 +1,254 @@
+package plc.project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * An on-disk cache of lexed {@link TokenBuffer}s, keyed by a SHA-256 hash of
+ * the source, so unchanged sources are not lexed again by later compilations.
+ *
+ * Each entry is a file holding a header followed by the token arrays exactly
+ * as {@link TokenBuffer} stores them, which is memory-mapped and bulk copied
+ * back into a buffer on a hit. The header holds a checksum of the arrays, and
+ * any entry which is truncated, damaged or written by a different version of
+ * the lexer is discarded and the source is lexed again.
+ *
+ * The total size of the entries is bounded, with the least recently used
+ * entries evicted first. Recency is an access stamp in the header, rewritten
+ * on each hit, rather than the modification time, which several file systems
+ * only keep to the second and would leave entries used in quick succession
+ * tied.
+ * Entries are written to a temporary file and moved into place, so several
+ * processes can share a directory. The cache is only an optimization, so
+ * failing to write an entry is not an error.
+ */
+public final class TokenCache {
+
+    private static final int MAGIC = 0x504C4354;    // "PLCT"
+    private static final int VERSION = 3;           // Increment whenever the lexer or the entry layout changes
+    private static final int FORMAT = fingerprint();
+    private static final int HEADER = 32;           // Magic, format, source length, token count, checksum, access stamp
+    private static final int ACCESS = 24;           // Offset of the access stamp, which is not covered by the checksum
+    private static final String EXTENSION = ".tok";
+    private static final AtomicLong CLOCK = new AtomicLong();   // Last access stamp handed out in this process
+
+    private final Path directory;
+    private final long capacity;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a cache in the given directory (creating it if needed) holding
+     * at most capacity bytes of entries.
+     */
+    public TokenCache(Path directory, long capacity) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the tokens of the source, reading them from the cache if an
+     * entry for the same source exists and lexing (and caching) them
+     * otherwise. A {@link ParseException} from the lexer is thrown as usual
+     * and nothing is cached.
+     */
+    public TokenBuffer lex(String source) {
+        Path path = directory.resolve(hash(source) + EXTENSION);
+        TokenBuffer buffer = read(path, source);
+        if (buffer != null) {
+            hits.incrementAndGet();
+            return buffer;
+        }
+        misses.incrementAndGet();
+        buffer = new Lexer(source).lexBuffer();
+        write(path, source, buffer);
+        return buffer;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the cached tokens of the source, or {@code null} if there is no
+     * valid entry, in which case a damaged entry is deleted.
+     */
+    private TokenBuffer read(Path path, String source) {
+        TokenBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer entry = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            entry.order(ByteOrder.LITTLE_ENDIAN);
+            if (entry.remaining() < HEADER || entry.getInt() != MAGIC || entry.getInt() != FORMAT || entry.getInt() != source.length()) {
+                throw new IllegalArgumentException("The entry header is invalid.");
+            }
+            int count = entry.getInt();
+            long checksum = entry.getLong();
+            entry.getLong();    // Access stamp
+            if (count < 0 || entry.remaining() != (long) count * (Long.BYTES + 2 * Integer.BYTES + 3) || checksum(entry.slice()) != checksum) {
+                throw new IllegalArgumentException("The entry is damaged.");
+            }
+            buffer = TokenBuffer.decode(source, entry.slice().order(ByteOrder.LITTLE_ENDIAN), count);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {}
+            return null;
+        }
+        touch(path);
+        return buffer;
+    }
+
+    /**
+     * Rewrites the access stamp of a valid entry. This is best-effort, since
+     * an entry which cannot be written, such as one in a read-only directory,
+     * is still valid and only keeps its older stamp.
+     */
+    private static void touch(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(0, stamp()), ACCESS);
+        } catch (IOException ignored) {}
+    }
+
+    private void write(Path path, String source, TokenBuffer buffer) {
+        ByteBuffer entry = ByteBuffer.allocate(HEADER + buffer.encodedSize()).order(ByteOrder.LITTLE_ENDIAN);
+        if (entry.capacity() > capacity) {
+            return;
+        }
+        entry.position(HEADER);
+        buffer.encode(entry);
+        entry.position(HEADER);
+        long checksum = checksum(entry.slice());
+        entry.clear();
+        entry.putInt(MAGIC).putInt(FORMAT).putInt(source.length()).putInt(buffer.size()).putLong(checksum).putLong(stamp());
+        entry.clear();
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (entry.hasRemaining()) {
+                    channel.write(entry);
+                }
+            }
+            try {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            evict();
+        } catch (IOException e) {
+            try {
+                if (temporary != null) {
+                    Files.deleteIfExists(temporary);
+                }
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the rest fit within the
+     * capacity. Entries deleted concurrently by another process are skipped,
+     * and entries too short to hold a stamp are deleted first.
+     */
+    private void evict() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        List<Long> stamps = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path path : entries) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    ByteBuffer stamp = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                    channel.read(stamp, ACCESS);
+                    paths.add(path);
+                    sizes.add(channel.size());
+                    stamps.add(stamp.hasRemaining() ? Long.MIN_VALUE : stamp.getLong(0));
+                    total += channel.size();
+                } catch (NoSuchFileException ignored) {}
+            }
+        }
+        if (total <= capacity) {
+            return;
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(stamps::get));
+        for (int i = 0; i < order.size() && total > capacity; i++) {
+            Files.deleteIfExists(paths.get(order.get(i)));
+            total -= sizes.get(order.get(i));
+        }
+    }
+
+    /**
+     * Returns the stamp of an access, which is the current time in
+     * microseconds but always later than every stamp handed out before in
+     * this process, so accesses within one tick of the clock stay ordered.
+     */
+    private static long stamp() {
+        Instant now = Instant.now();
+        long micros = now.getEpochSecond() * 1_000_000 + now.getNano() / 1_000;
+        return CLOCK.updateAndGet(last -> Math.max(last + 1, micros));
+    }
+
+    private static String hash(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(2 * digest.length);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);   // Every Java platform is required to support it
+        }
+    }
+
+    private static long checksum(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    /**
+     * Combines the version with the names of the token enums, whose ordinals
+     * are stored in entries, so entries from a lexer with different enums are
+     * never read.
+     */
+    private static int fingerprint() {
+        int hash = VERSION;
+        for (Enum<?>[] values : new Enum<?>[][] {Token.Type.values(), Token.Keyword.values(), Token.Operator.values()}) {
+            for (Enum<?> value : values) {
+                hash = 31 * hash + value.name().hashCode();
+            }
+            hash = 31 * hash + values.length;
+        }
+        return hash;
+    }
+
+}
@@ -0,0 +1,25 @@
+package plc.project;
+
+import java.util.Iterator;
+
+/**
+ * A pull-based source of tokens. Unlike {@link Lexer#lex()}, which builds the
+ * full token list up front, a token source produces each token on demand so
+ * the {@link Parser} can consume input without holding every token in memory.
+ */
+public interface TokenSource {
+
+    /**
+     * Returns the next token, or {@code null} once the input is exhausted.
+     */
+    Token next() throws ParseException;
+
+    /**
+     * Returns a source over an already materialized sequence of tokens.
+     */
+    static TokenSource of(Iterable<Token> tokens) {
+        Iterator<Token> iterator = tokens.iterator();
+        return () -> iterator.hasNext() ? iterator.next() : null;
+    }
+
+}
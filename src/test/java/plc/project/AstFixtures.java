@@ -0,0 +1,65 @@
+package plc.project;
+
+import org.junit.jupiter.params.provider.Arguments;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.stream.Stream;
+
+/**
+ * Programs and helpers shared by the tests of the alternative forms of a tree,
+ * which must each convert back to an AST equal to the original.
+ */
+final class AstFixtures {
+
+    private AstFixtures() {}
+
+    /**
+     * Returns programs covering every kind of node and literal, as arguments
+     * of a test name, the source and whether to analyze it before converting.
+     */
+    static Stream<Arguments> programs() {
+        String program = new ProgramGenerator(0, 20, 4, 2).generate();
+        return Stream.of(
+                Arguments.of("Generated", program, false),
+                Arguments.of("Generated Analyzed", program, true),
+                Arguments.of("Literals", "LIST l: Any = [NIL, TRUE, FALSE, 0, -1, 123456789012345678901234567890, 1.5, -0.25, 1.00000000000000000000000000001, 'c', '\u00e9', \"string\\n\", \"\u00fcnicode \u4e16\"];", false),
+                Arguments.of("Statements", "VAL x: Integer = 1;\nFUN main(): Integer DO\n    LET y = 2;\n    LET z: Decimal;\n    IF x > y DO z = 1.0; ELSE WHILE y < x DO y = y + 1; END END\n    SWITCH x CASE 1: print(x); DEFAULT print((y + 1)); END\n    RETURN x;\nEND", true)
+        );
+    }
+
+    static Ast.Source parse(String input, boolean analyze) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        if (analyze) {
+            new Analyzer(new Scope(null)).visit(ast);
+        }
+        return ast;
+    }
+
+    /**
+     * Returns a function returning an expression nested the given number of
+     * groups deep, which is too deep for any recursive walk.
+     */
+    static Ast.Source nested(int depth) {
+        StringBuilder builder = new StringBuilder("FUN f() DO\n    RETURN ");
+        for (int i = 0; i < depth; i++) {
+            builder.append("(1 + ");
+        }
+        builder.append("x");
+        for (int i = 0; i < depth; i++) {
+            builder.append(")");
+        }
+        return new Parser(new Lexer(builder.append(";\nEND").toString()).lexBuffer()).parseSourceIterative();
+    }
+
+    /**
+     * Returns the Java generated for an analyzed tree, which reads the types,
+     * variables and functions attached to it.
+     */
+    static String generate(Ast.Source ast) {
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(ast);
+        return writer.toString();
+    }
+
+}
@@ -0,0 +1,79 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests that trees written by the {@link AstSerializer} are read back equal to
+ * the original, before and after analysis.
+ */
+final class AstSerializerTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testRoundTrip(String test, String input, boolean analyze) {
+        Ast.Source ast = AstFixtures.parse(input, analyze);
+        Ast.Source read = AstSerializer.read(AstSerializer.write(ast));
+        Assertions.assertEquals(ast, read);
+        if (analyze) {
+            Assertions.assertEquals(AstFixtures.generate(ast), AstFixtures.generate(read));
+        }
+    }
+
+    private static Stream<Arguments> testRoundTrip() {
+        return AstFixtures.programs();
+    }
+
+    @Test
+    void testSharedVariables() {
+        Ast.Source ast = new Parser(new Lexer("VAR x: Integer = 1;\nFUN main(): Integer DO\n    x = x + 1;\n    RETURN x;\nEND").lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Ast.Source read = AstSerializer.read(AstSerializer.write(ast));
+        Environment.Variable variable = read.getGlobals().get(0).getVariable();
+        Ast.Statement.Return statement = (Ast.Statement.Return) read.getFunctions().get(0).getStatements().get(1);
+        Assertions.assertSame(variable, ((Ast.Expression.Access) statement.getValue()).getVariable());
+        Assertions.assertSame(Environment.Type.INTEGER, variable.getType());
+    }
+
+    @Test
+    void testDepth() {
+        Ast.Source ast = AstFixtures.nested(100_000);
+        List<Ast> expected = new ArrayList<>();
+        List<Ast> actual = new ArrayList<>();
+        AstTraversal.preOrder(ast, expected::add);
+        AstTraversal.preOrder(AstSerializer.read(AstSerializer.write(ast)), actual::add);
+        Assertions.assertEquals(expected.size(), actual.size());
+        Assertions.assertEquals(expected.get(expected.size() - 1), actual.get(actual.size() - 1));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testMalformed(String test, byte[] bytes) {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AstSerializer.read(bytes));
+    }
+
+    private static Stream<Arguments> testMalformed() {
+        byte[] bytes = AstSerializer.write(new Parser(new Lexer("VAR x: Integer = 1;\nFUN f() DO x = 2; END").lex()).parseSource());
+        byte[] version = bytes.clone();
+        version[4]++;
+        byte[] tag = bytes.clone();
+        tag[bytes.length - 3] = 100;
+        return Stream.of(
+                Arguments.of("Empty", new byte[0]),
+                Arguments.of("Magic", new byte[] {1, 2, 3, 4, 1, 0}),
+                Arguments.of("Version", version),
+                Arguments.of("Truncated", Arrays.copyOf(bytes, bytes.length - 1)),
+                Arguments.of("Unknown Tag", tag),
+                Arguments.of("Trailing Node", Arrays.copyOf(bytes, bytes.length + 1))
+        );
+    }
+
+}
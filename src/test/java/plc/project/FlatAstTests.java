@@ -0,0 +1,285 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests that a {@link FlatAst} converts back to an equal AST, that its cursor
+ * reads the structure and fields of the original tree, and that the
+ * {@link Analyzer} and {@link Interpreter} walk it as they visit the AST.
+ */
+final class FlatAstTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testRoundTrip(String test, String input, boolean analyze) {
+        Ast.Source ast = AstFixtures.parse(input, analyze);
+        Ast.Source converted = FlatAst.of(ast).toAst();
+        Assertions.assertEquals(ast, converted);
+        if (analyze) {
+            Assertions.assertEquals(AstFixtures.generate(ast), AstFixtures.generate(converted));
+        }
+    }
+
+    private static Stream<Arguments> testRoundTrip() {
+        return AstFixtures.programs();
+    }
+
+    /**
+     * Walks the tree in pre-order with the cursor, checking each node against
+     * the AST node in the same position.
+     */
+    @ParameterizedTest
+    @MethodSource
+    void testLinks(String test, String input, boolean analyze) {
+        Ast.Source ast = AstFixtures.parse(input, analyze);
+        List<Ast> nodes = new ArrayList<>();
+        AstTraversal.preOrder(ast, nodes::add);
+        FlatAst flat = FlatAst.of(ast);
+        Assertions.assertEquals(nodes.size(), flat.size());
+        FlatAst.Cursor cursor = flat.cursor();
+        int visited = 0;
+        boolean more = true;
+        while (more) {
+            Assertions.assertEquals(visited, cursor.node());
+            Assertions.assertEquals(AstTraversal.children(nodes.get(visited)).size(), cursor.getChildCount());
+            Assertions.assertEquals(nodes.get(visited), cursor.toAst());
+            visited++;
+            more = cursor.gotoFirstChild();
+            while (!more && !(more = cursor.gotoNextSibling()) && cursor.gotoParent()) {}
+        }
+        Assertions.assertEquals(0, cursor.depth());
+        Assertions.assertEquals(nodes.size(), visited);
+    }
+
+    private static Stream<Arguments> testLinks() {
+        return AstFixtures.programs();
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testThenCount(String test, String input, int then, int children) {
+        Ast.Source ast = AstFixtures.parse("FUN f() DO\n    " + input + "\nEND", false);
+        Ast.Statement.If statement = (Ast.Statement.If) ast.getFunctions().get(0).getStatements().get(0);
+        FlatAst.Cursor cursor = FlatAst.of(ast).cursor();
+        Assertions.assertTrue(cursor.gotoFirstChild() && cursor.gotoFirstChild());
+        Assertions.assertEquals(then, cursor.getThenCount());
+        Assertions.assertEquals(children, cursor.getChildCount());
+        Assertions.assertTrue(cursor.gotoFirstChild());
+        List<Ast> statements = new ArrayList<>();
+        while (cursor.gotoNextSibling()) {
+            statements.add(cursor.toAst());
+        }
+        Assertions.assertEquals(statement.getThenStatements(), statements.subList(0, then));
+        Assertions.assertEquals(statement.getElseStatements(), statements.subList(then, statements.size()));
+        Assertions.assertTrue(cursor.gotoParent());
+        Assertions.assertThrows(IllegalStateException.class, cursor::hasCaseValue);
+    }
+
+    private static Stream<Arguments> testThenCount() {
+        return Stream.of(
+                Arguments.of("Empty", "IF c DO END", 0, 1),
+                Arguments.of("Then", "IF c DO a(); b(); END", 2, 3),
+                Arguments.of("Else", "IF c DO ELSE a(); b(); END", 0, 3),
+                Arguments.of("Then Else", "IF c DO a(); ELSE b(); c(); END", 1, 4)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testCaseValue(String test, String input, List<Boolean> values, List<Integer> children) {
+        Ast.Source ast = AstFixtures.parse("FUN f() DO\n    " + input + "\nEND", false);
+        Ast.Statement.Switch statement = (Ast.Statement.Switch) ast.getFunctions().get(0).getStatements().get(0);
+        FlatAst.Cursor cursor = FlatAst.of(ast).cursor();
+        Assertions.assertTrue(cursor.gotoFirstChild() && cursor.gotoFirstChild());
+        Assertions.assertThrows(IllegalStateException.class, cursor::hasCaseValue);
+        Assertions.assertTrue(cursor.gotoFirstChild());
+        List<Boolean> actualValues = new ArrayList<>();
+        List<Integer> actualChildren = new ArrayList<>();
+        List<Ast> cases = new ArrayList<>();
+        while (cursor.gotoNextSibling()) {
+            actualValues.add(cursor.hasCaseValue());
+            actualChildren.add(cursor.getChildCount());
+            cases.add(cursor.toAst());
+        }
+        Assertions.assertEquals(values, actualValues);
+        Assertions.assertEquals(children, actualChildren);
+        Assertions.assertEquals(statement.getCases(), cases);
+        Assertions.assertThrows(IllegalStateException.class, cursor::getThenCount);
+    }
+
+    private static Stream<Arguments> testCaseValue() {
+        return Stream.of(
+                Arguments.of("Default", "SWITCH x DEFAULT END", Arrays.asList(false), Arrays.asList(0)),
+                Arguments.of("Default Statements", "SWITCH x DEFAULT a(); b(); END", Arrays.asList(false), Arrays.asList(2)),
+                Arguments.of("Empty Case", "SWITCH x CASE 1: DEFAULT a(); END", Arrays.asList(true, false), Arrays.asList(1, 1)),
+                Arguments.of("Cases", "SWITCH x CASE 1: a(); CASE 2: b(); c(); DEFAULT END", Arrays.asList(true, true, false), Arrays.asList(2, 3, 0))
+        );
+    }
+
+    @Test
+    void testCursor() {
+        Ast.Source ast = AstFixtures.parse("VAR x: Integer = 1;\nFUN f(a: Integer): Integer DO\n    IF a > x DO RETURN a; END\n    RETURN x;\nEND\nFUN main(): Integer DO\n    RETURN f(0);\nEND", true);
+        FlatAst.Cursor cursor = FlatAst.of(ast).cursor();
+        Assertions.assertEquals(FlatAst.Kind.SOURCE, cursor.kind());
+        Assertions.assertEquals(1, cursor.getGlobalCount());
+        Assertions.assertTrue(cursor.gotoFirstChild());
+        Assertions.assertEquals(FlatAst.Kind.GLOBAL, cursor.kind());
+        Assertions.assertEquals("x", cursor.getName());
+        Assertions.assertTrue(cursor.getMutable());
+        Assertions.assertTrue(cursor.gotoFirstChild());
+        Assertions.assertEquals(BigInteger.ONE, cursor.getLiteral());
+        Assertions.assertTrue(cursor.hasPrimitive());
+        Assertions.assertEquals(1, cursor.getLongValue());
+        Assertions.assertSame(Environment.Type.INTEGER, cursor.getType());
+        Assertions.assertFalse(cursor.gotoFirstChild());
+        Assertions.assertFalse(cursor.gotoNextSibling());
+        Assertions.assertTrue(cursor.gotoParent() && cursor.gotoNextSibling());
+        Assertions.assertEquals(FlatAst.Kind.FUNCTION, cursor.kind());
+        Assertions.assertEquals("f", cursor.getName());
+        Assertions.assertEquals(Arrays.asList("a"), cursor.getParameters());
+        Assertions.assertEquals(Arrays.asList("Integer"), cursor.getParameterTypeNames());
+        Assertions.assertEquals("Integer", cursor.getTypeName().get());
+        Assertions.assertTrue(cursor.gotoFirstChild() && cursor.gotoFirstChild());
+        Assertions.assertEquals(FlatAst.Kind.BINARY, cursor.kind());
+        Assertions.assertEquals(">", cursor.getOperator());
+        Assertions.assertEquals(Token.Operator.GREATER, cursor.getOperatorId());
+        Assertions.assertSame(Environment.Type.BOOLEAN, cursor.getType());
+        FlatAst.Cursor copy = cursor.copy();
+        Assertions.assertTrue(cursor.gotoFirstChild());
+        Assertions.assertEquals(FlatAst.Kind.ACCESS, cursor.kind());
+        Assertions.assertThrows(IllegalStateException.class, cursor::getOperator);
+        Assertions.assertEquals(4, cursor.depth());
+        Assertions.assertEquals(FlatAst.Kind.BINARY, copy.kind());
+        Assertions.assertEquals(3, copy.depth());
+        Assertions.assertTrue(copy.gotoParent() && copy.gotoParent() && copy.gotoParent());
+        Assertions.assertFalse(copy.gotoParent());
+        Assertions.assertEquals(4, cursor.depth());
+    }
+
+    @Test
+    void testOffsets() {
+        String source = "VAR x: Integer = 1;\nFUN main(): Integer DO\n    RETURN x;\nEND";
+        FlatAst.Cursor cursor = FlatAst.of(ParsedSource.parse(source)).cursor();
+        Assertions.assertEquals(-1, cursor.offset());
+        Assertions.assertTrue(cursor.gotoFirstChild());
+        Assertions.assertEquals(0, cursor.offset());
+        Assertions.assertTrue(cursor.gotoNextSibling());
+        Assertions.assertEquals(source.indexOf("FUN"), cursor.offset());
+        Assertions.assertTrue(cursor.gotoFirstChild());
+        Assertions.assertEquals(-1, cursor.offset());
+    }
+
+    /**
+     * Checks that equal names and literals convert to one shared object, while
+     * attachments are shared only when they are the same object.
+     */
+    @Test
+    void testConstants() {
+        Ast.Source ast = AstFixtures.parse("VAR x: Integer = 1;\nFUN f() DO\n    LET y = 1;\n    x = y;\nEND\nFUN main(): Integer DO\n    LET y = 1;\n    RETURN x;\nEND", true);
+        Ast.Source converted = FlatAst.of(ast).toAst();
+        Ast.Global global = converted.getGlobals().get(0);
+        List<Ast.Statement> f = converted.getFunctions().get(0).getStatements();
+        List<Ast.Statement> main = converted.getFunctions().get(1).getStatements();
+        Ast.Statement.Assignment assignment = (Ast.Statement.Assignment) f.get(1);
+        Ast.Expression.Access receiver = (Ast.Expression.Access) assignment.getReceiver();
+        Ast.Expression.Access value = (Ast.Expression.Access) ((Ast.Statement.Return) main.get(1)).getValue();
+        Assertions.assertSame(global.getName(), receiver.getName());
+        Assertions.assertSame(global.getVariable(), receiver.getVariable());
+        Assertions.assertSame(global.getVariable(), value.getVariable());
+        Ast.Statement.Declaration first = (Ast.Statement.Declaration) f.get(0);
+        Ast.Statement.Declaration second = (Ast.Statement.Declaration) main.get(0);
+        Assertions.assertSame(first.getName(), second.getName());
+        Assertions.assertSame(((Ast.Expression.Literal) global.getValue().get()).getLiteral(), ((Ast.Expression.Literal) first.getValue().get()).getLiteral());
+        Assertions.assertEquals(first.getVariable(), second.getVariable());
+        Assertions.assertNotSame(first.getVariable(), second.getVariable());
+        Assertions.assertSame(first.getVariable(), ((Ast.Expression.Access) assignment.getValue()).getVariable());
+    }
+
+    @Test
+    void testDepth() {
+        Ast.Source ast = AstFixtures.nested(100_000);
+        FlatAst flat = FlatAst.of(ast);
+        FlatAst.Cursor cursor = flat.cursor();
+        while (cursor.gotoFirstChild()) {
+            while (cursor.gotoNextSibling()) {}
+        }
+        Assertions.assertEquals(flat.size() - 1, cursor.node());
+        Assertions.assertEquals(3 + 2 * 100_000, cursor.depth());   // Below the source, function and return, a group and binary per level
+        List<Ast> expected = new ArrayList<>();
+        AstTraversal.preOrder(ast, expected::add);
+        Assertions.assertEquals(expected.size(), flat.size());
+        Assertions.assertEquals(expected.get(expected.size() - 1), cursor.toAst());
+        List<Ast> actual = new ArrayList<>();
+        AstTraversal.preOrder(flat.toAst(), actual::add);
+        Assertions.assertEquals(expected.size(), actual.size());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testInterpreter(String test, String input) {
+        Ast.Source ast = AstFixtures.parse(input, false);
+        String expected;
+        try {
+            expected = String.valueOf(new Interpreter(new Scope(null)).visit(ast).getValue());
+        } catch (RuntimeException e) {
+            RuntimeException actual = Assertions.assertThrows(RuntimeException.class, () -> new Interpreter(new Scope(null)).visit(FlatAst.of(ast)));
+            Assertions.assertEquals(e.getMessage(), actual.getMessage());
+            return;
+        }
+        Assertions.assertEquals(expected, String.valueOf(new Interpreter(new Scope(null)).visit(FlatAst.of(ast)).getValue()));
+    }
+
+    private static Stream<Arguments> testInterpreter() {
+        return Stream.of(
+                Arguments.of("Generated", new ProgramGenerator(1, 10, 4, 2).generate()),
+                Arguments.of("Recursion", "VAR x: Integer = 1;\nFUN f(n: Integer): Integer DO\n    IF n < 1 DO RETURN 0; ELSE x = x + n; END\n    RETURN n + f(n - 1);\nEND\nFUN main(): Integer DO\n    RETURN f(10) + x;\nEND"),
+                Arguments.of("Statements", "LIST l: Integer = [1, 2, 3];\nFUN main(): Integer DO\n    LET i = 0;\n    LET s = 0;\n    WHILE i < 3 DO s = s + l[i]; i = i + 1; END\n    l[0] = s;\n    SWITCH s CASE 1: RETURN 1; CASE 6: print(s); DEFAULT RETURN 2; END\n    RETURN l[0];\nEND"),
+                Arguments.of("Short Circuit", "FUN main(): Integer DO\n    IF FALSE && 1 / 0 == 0 DO RETURN 1; END\n    RETURN 0;\nEND"),
+                Arguments.of("Divide By Zero", "FUN main(): Integer DO\n    RETURN 1 / 0;\nEND"),
+                Arguments.of("Immutable", "VAL x: Integer = 1;\nFUN main(): Integer DO\n    x = 2;\n    RETURN x;\nEND")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testAnalyzer(String test, String input) {
+        Ast.Source ast = AstFixtures.parse(input, false);
+        FlatAst flat = FlatAst.of(ast);
+        String expected;
+        try {
+            new Analyzer(new Scope(null)).visit(ast);
+            expected = AstFixtures.generate(ast);
+        } catch (RuntimeException e) {
+            RuntimeException actual = Assertions.assertThrows(RuntimeException.class, () -> new Analyzer(new Scope(null)).visit(flat));
+            Assertions.assertEquals(e.getMessage(), actual.getMessage());
+            return;
+        }
+        FlatAst analyzed = new Analyzer(new Scope(null)).visit(flat);
+        Assertions.assertEquals(expected, AstFixtures.generate(analyzed.toAst()));
+        Assertions.assertEquals(ast, analyzed.toAst());
+        Assertions.assertNull(flat.toAst().getFunctions().get(0).getFunctionOrNull());
+    }
+
+    private static Stream<Arguments> testAnalyzer() {
+        return Stream.of(
+                Arguments.of("Generated", new ProgramGenerator(2, 10, 4, 2).generate()),
+                Arguments.of("Lists", "LIST l: Integer = [1, 2];\nFUN main(): Integer DO\n    l[1] = l[0];\n    RETURN l[1];\nEND"),
+                Arguments.of("List Type", "LIST l: Integer = [1, 'c'];\nFUN main(): Integer DO\n    RETURN 0;\nEND"),
+                Arguments.of("Empty Then", "FUN main(): Integer DO\n    IF TRUE DO ELSE print(1); END\n    RETURN 0;\nEND"),
+                Arguments.of("Case Type", "FUN main(): Integer DO\n    SWITCH 1 CASE 'c': print(1); DEFAULT print(2); END\n    RETURN 0;\nEND"),
+                Arguments.of("Group", "FUN main(): Integer DO\n    print((1));\n    RETURN 0;\nEND"),
+                Arguments.of("Main Type", "FUN main(): Decimal DO\n    RETURN 1.0;\nEND")
+        );
+    }
+
+}
@@ -6,6 +6,13 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Stream;
@@ -292,6 +299,426 @@ public class LexerTests {
         Assertions.assertEquals(13, exception.getIndex());
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testKeyword(String test, String input, Token.Keyword expected) {
+        Token token = new Lexer(input).lexToken();
+        Assertions.assertEquals(new Token(Token.Type.IDENTIFIER, input, 0), token);
+        Assertions.assertEquals(expected, token.getKeyword());
+        Assertions.assertEquals(expected, Token.Keyword.of(" " + input + "S", 1, input.length()));
+    }
+
+    private static Stream<Arguments> testKeyword() {
+        return Stream.of(
+                Arguments.of("Keyword", "WHILE", Token.Keyword.WHILE),
+                Arguments.of("Literal Keyword", "NIL", Token.Keyword.NIL),
+                Arguments.of("Lowercase", "while", null),
+                Arguments.of("Keyword Prefix", "ENDING", null)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testOperatorId(String test, String input, String literal, Token.Operator expected) {
+        Token token = new Lexer(input).lexToken();
+        Assertions.assertEquals(new Token(Token.Type.OPERATOR, literal, 0), token);
+        Assertions.assertEquals(expected, token.getOperator());
+        Assertions.assertEquals(expected, new Lexer(input).lexBuffer().getOperator(0));
+        Assertions.assertEquals(expected, Token.Operator.of(" " + literal + "=", 1, literal.length()));
+    }
+
+    private static Stream<Arguments> testOperatorId() {
+        return Stream.of(
+                Arguments.of("Single Character", ";", ";", Token.Operator.SEMICOLON),
+                Arguments.of("Longest Match", "!=", "!=", Token.Operator.NOT_EQUAL),
+                Arguments.of("Two Characters", "==", "==", Token.Operator.EQUAL),
+                Arguments.of("Shorter Match", "=!", "=", Token.Operator.ASSIGN),
+                Arguments.of("Hyphen", "- 1", "-", Token.Operator.MINUS),
+                Arguments.of("Incomplete Operator", "!", "!", null),
+                Arguments.of("Unknown Character", "$", "$", null)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testValue(String test, String input, String expected) {
+        Assertions.assertEquals(expected, new Lexer(input).lexToken().getValue());
+    }
+
+    private static Stream<Arguments> testValue() {
+        return Stream.of(
+                Arguments.of("Character", "'c'", "c"),
+                Arguments.of("Character Escape", "'\\n'", "\n"),
+                Arguments.of("String", "\"abc\"", "abc"),
+                Arguments.of("String Escapes", "\"a\\tb\\\"c\"", "a\tb\"c"),
+                Arguments.of("Escaped Backslash", "\"a\\\\nb\"", "a\\nb")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("testValue")
+    void testBufferValue(String test, String input, String expected) {
+        TokenBuffer buffer = new Lexer(input).lexBuffer();
+        Assertions.assertEquals(expected, buffer.getValue(0));
+        Assertions.assertEquals(expected, buffer.get(0).getValue());
+        TokenBuffer added = new TokenBuffer(input);   // Tokens added by range are not known to be free of escapes
+        added.add(buffer.getType(0), 0, input.length());
+        Assertions.assertEquals(expected, added.getValue(0));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testNumber(String test, String input, boolean parsed, long unscaled, int scale) {
+        Token token = new Lexer(input).lexToken();
+        Assertions.assertEquals(parsed, token.hasNumber());
+        if (parsed) {
+            Assertions.assertEquals(unscaled, token.getUnscaledValue());
+            Assertions.assertEquals(scale, token.getScale());
+        }
+    }
+
+    private static Stream<Arguments> testNumber() {
+        return Stream.of(
+                Arguments.of("Integer", "123", true, 123L, 0),
+                Arguments.of("Negative Integer", "-45", true, -45L, 0),
+                Arguments.of("Decimal", "2.50", true, 250L, 2),
+                Arguments.of("Negative Decimal", "-0.5", true, -5L, 1),
+                Arguments.of("Long Max", "9223372036854775807", true, Long.MAX_VALUE, 0),
+                Arguments.of("Long Min", "-9223372036854775808", true, Long.MIN_VALUE, 0),
+                Arguments.of("Above Long Max", "9223372036854775808", false, 0L, 0),
+                Arguments.of("Long Decimal", "92233720368547758.080", false, 0L, 0)
+        );
+    }
+
+    @Test
+    void testInterning() {
+        // Identifiers are interned, so repeated names share one instance
+        List<Token> tokens = new Lexer("name = name + other;").lex();
+        Assertions.assertSame(tokens.get(0).getLiteral(), tokens.get(2).getLiteral());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testStreaming(String test, String input) {
+        // A reader returning one character per read forces the buffer to refill on every character
+        Reader reader = new StringReader(input) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws java.io.IOException {
+                return super.read(buffer, offset, Math.min(length, 1));
+            }
+        };
+        Assertions.assertEquals(new Lexer(input).lex(), new Lexer(reader).lex());
+    }
+
+    private static Stream<Arguments> testStreaming() {
+        char[] longString = new char[20000];
+        Arrays.fill(longString, 'a');
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Whitespace", "  \n\t "),
+                Arguments.of("Declaration", "VAR i = -1 : Integer;\nVAL inc = 2.50 : Decimal;"),
+                Arguments.of("Literals", "print(\"Hello,\\nWorld\", 'c', '\\'', 0.5);"),
+                Arguments.of("Long String", "LET x = \"" + new String(longString) + "\";")
+        );
+    }
+
+    @Test
+    void testStreamingException() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer(new StringReader("LET x = \"unterminated")).lex());
+        Assertions.assertEquals(21, exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource("testStreaming")
+    void testBuffer(String test, String input) {
+        TokenBuffer buffer = new Lexer(input).lexBuffer();
+        List<Token> expected = new Lexer(input).lex();
+        Assertions.assertEquals(expected, buffer.asList());
+        for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertEquals(expected.get(i).getType(), buffer.getType(i));
+            Assertions.assertEquals(expected.get(i).getIndex(), buffer.getIndex(i));
+            Assertions.assertTrue(buffer.literalEquals(i, expected.get(i).getLiteral()));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallel(String test, String input) {
+        List<Token> expected;
+        try {
+            expected = new Lexer(input).lex();
+        } catch (ParseException e) {
+            ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Lexer(input).lexParallel());
+            Assertions.assertEquals(e.getMessage(), exception.getMessage());
+            Assertions.assertEquals(e.getIndex(), exception.getIndex());
+            return;
+        }
+        Assertions.assertEquals(expected, new Lexer(input).lexParallel());
+    }
+
+    private static Stream<Arguments> testParallel() {
+        String program = "VAR i = -1 : Integer;\nFUN foo() DO\n    print(\"bar\\n\", '\n');\n    i = i + 1.5;\nEND\n";
+        StringBuilder large = new StringBuilder();
+        while (large.length() < 1 << 18) {
+            large.append(program);
+        }
+        return Stream.of(
+                Arguments.of("Small", program),
+                Arguments.of("Large", large.toString()),
+                Arguments.of("Multiline String", large + "\"unterminated\n\"" + large),
+                Arguments.of("Multiple Errors", large + "'ab'" + large + "\"unterminated")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLineTable(String test, String input, int index, int line, int column) {
+        Lexer lexer = new Lexer(input);
+        lexer.lex();
+        Assertions.assertEquals(line, lexer.getLineTable().getLine(index));
+        Assertions.assertEquals(column, lexer.getLineTable().getColumn(index));
+        Assertions.assertEquals(line, LineTable.of(input).getLine(index));
+        Assertions.assertEquals(column, LineTable.of(input).getColumn(index));
+    }
+
+    private static Stream<Arguments> testLineTable() {
+        return Stream.of(
+                Arguments.of("First Line", "abc", 1, 1, 2),
+                Arguments.of("Second Line", "a\nbc", 3, 2, 2),
+                Arguments.of("Newline", "a\nb", 1, 1, 2),
+                Arguments.of("Line Start", "a\nb", 2, 2, 1),
+                Arguments.of("Carriage Return", "a\r\nb", 3, 2, 1),
+                Arguments.of("Blank Lines", "a\n\n\nb", 4, 4, 1),
+                Arguments.of("Character Literal", "'\n' x", 4, 2, 3),
+                Arguments.of("End of Input", "a\n", 2, 2, 1)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("testParallel")
+    void testLineTableParallel(String test, String input) {
+        LineTable expected = LineTable.of(input);
+        Lexer lexer = new Lexer(input);
+        try {
+            lexer.lexParallel();
+        } catch (ParseException e) {
+            Assertions.assertEquals(expected.getLine(e.getIndex()), lexer.getLineTable().getLine(e.getIndex()));
+            return;
+        }
+        Assertions.assertEquals(expected.getLineCount(), lexer.getLineTable().getLineCount());
+        for (int i = 0; i < input.length(); i += 97) {
+            Assertions.assertEquals(expected.getLine(i), lexer.getLineTable().getLine(i));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIncremental(String test, String input, int offset, int removed, String inserted) {
+        String edited = input.substring(0, offset) + inserted + input.substring(offset + removed);
+        TokenBuffer buffer = Lexer.relex(new Lexer(input).lexBuffer(), offset, removed, inserted);
+        Assertions.assertEquals(new Lexer(edited).lex(), buffer.asList());
+    }
+
+    private static Stream<Arguments> testIncremental() {
+        String program = "VAR i = -1 : Integer;\nFUN foo() DO\n    print(\"bar\");\n    i = i + 1.x;\nEND";
+        return Stream.of(
+                Arguments.of("Extend Identifier", program, 5, 0, "dx"),
+                Arguments.of("Split Identifier", program, 42, 0, " "),
+                Arguments.of("Join Tokens", program, 7, 1, ""),
+                Arguments.of("Integer To Decimal", program, 67, 1, "5"),
+                Arguments.of("Replace String", program, 45, 5, "\"baz qux\""),
+                Arguments.of("Insert At Start", program, 0, 0, "VAL j = 0 : Integer;\n"),
+                Arguments.of("Append At End", program, program.length(), 0, "\nFUN bar() DO END"),
+                Arguments.of("Delete Everything", program, 0, program.length(), "")
+        );
+    }
+
+    @Test
+    void testIncrementalException() {
+        // Removing the closing quote leaves a string literal running into the newline
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> Lexer.relex(new Lexer("print(\"bar\");\nEND").lexBuffer(), 10, 1, ""));
+        Assertions.assertEquals(12, exception.getIndex());
+    }
+
+    @Test
+    void testMapped() throws IOException {
+        String input = "VAR i = -1 : Integer;\nFUN foo() DO\n    print(\"bar\\n\");\nEND";
+        Path path = Files.createTempFile("lexer", ".plc");
+        try {
+            Files.write(path, input.getBytes(StandardCharsets.UTF_8));
+            Assertions.assertEquals(new Lexer(input).lex(), Lexer.map(path).lex());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void testMappedUtf8() throws IOException {
+        // Indices are byte offsets, so the 2-byte character shifts the following token by one extra position
+        Path path = Files.createTempFile("lexer", ".plc");
+        try {
+            Files.write(path, "\"caf\u00e9\" x".getBytes(StandardCharsets.UTF_8));
+            Assertions.assertEquals(Arrays.asList(
+                    new Token(Token.Type.STRING, "\"caf\u00e9\"", 0),
+                    new Token(Token.Type.IDENTIFIER, "x", 8)
+            ), Lexer.map(path).lex());
+            Files.write(path, "\"caf\u00e9\\n\"".getBytes(StandardCharsets.UTF_8));
+            Assertions.assertEquals("caf\u00e9\n", Lexer.map(path).lexToken().getValue());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testBytes(String test, String input) {
+        List<Token> expected = new Lexer(input).lex();
+        List<Token> actual = new Lexer(input.getBytes(StandardCharsets.UTF_8)).lex();
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertEquals(expected.get(i).getType(), actual.get(i).getType());
+            Assertions.assertEquals(expected.get(i).getLiteral(), actual.get(i).getLiteral());
+            Assertions.assertEquals(expected.get(i).getIndex(), actual.get(i).getCharIndex());
+            if (expected.get(i).getType() == Token.Type.STRING || expected.get(i).getType() == Token.Type.CHARACTER) {
+                Assertions.assertEquals(expected.get(i).getValue(), actual.get(i).getValue());
+            }
+        }
+    }
+
+    private static Stream<Arguments> testBytes() {
+        return Stream.of(
+                Arguments.of("ASCII", "VAR i = -1 : Integer;"),
+                Arguments.of("String", "print(\"caf\u00e9\", x);"),
+                Arguments.of("Escaped String", "\"\u00e9\\t\u20ac\" y"),
+                Arguments.of("Two Byte Character", "'\u00e9' x"),
+                Arguments.of("Three Byte Character", "'\u20ac' x"),
+                Arguments.of("Supplementary String", "\"\ud83d\ude00\" x \"\u00e9\" y"),
+                Arguments.of("Non-ASCII Operator", "x \u00e9 \u20ac y"),
+                Arguments.of("Indented", "FUN f() DO\n                IF x THEN\n                    y = z;\n                END\nEND"),
+                Arguments.of("Long Identifier", "a_very-long_identifier0123456789 @another_long_identifier_name;"),
+                Arguments.of("Long String", "\"a long string literal, which spans several words\\t with \\\"escapes\\\" and caf\u00e9\""),
+                Arguments.of("Word Boundaries", "\"1234567\" \"12345678\\n\" \"123456789\u00e9\" abcdefg abcdefgh")
+        );
+    }
+
+    @Test
+    void testBytesException() {
+        // A supplementary character is two chars in a String, so neither input fits in a character literal
+        // The multibyte characters before it put the byte offset of the error past its char index
+        String input = "\"\u00e9\u20ac\" '\ud83d\ude00'";
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Lexer(input).lex());
+        Lexer lexer = new Lexer(input.getBytes(StandardCharsets.UTF_8));
+        ParseException actual = Assertions.assertThrows(ParseException.class, lexer::lex);
+        Assertions.assertEquals(expected.getIndex() + 3, actual.getIndex());
+        Assertions.assertEquals(expected.getIndex(), lexer.getCharIndex(actual.getIndex()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("testStreaming")
+    void testCache(String test, String input) throws IOException {
+        Path directory = Files.createTempDirectory("tokens");
+        try {
+            TokenCache cache = new TokenCache(directory, 1 << 20);
+            List<Token> expected = new Lexer(input).lex();
+            Assertions.assertEquals(expected, cache.lex(input).asList());
+            TokenBuffer cached = cache.lex(input);
+            Assertions.assertEquals(expected, cached.asList());
+            for (int i = 0; i < expected.size(); i++) {
+                Assertions.assertEquals(expected.get(i).getKeyword(), cached.getKeyword(i));
+                Assertions.assertEquals(expected.get(i).getOperator(), cached.getOperator(i));
+                Assertions.assertEquals(expected.get(i).getScale(), cached.getScale(i));
+            }
+            Assertions.assertEquals(1, cache.getHits());
+            Assertions.assertEquals(1, cache.getMisses());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void testCacheCorrupt() throws IOException {
+        String input = "VAR i = -1 : Integer;\nFUN foo() DO\n    print(\"bar\");\nEND";
+        Path directory = Files.createTempDirectory("tokens");
+        try {
+            TokenCache cache = new TokenCache(directory, 1 << 20);
+            cache.lex(input);
+            Path entry;
+            try (Stream<Path> entries = Files.list(directory)) {
+                entry = entries.findFirst().get();
+            }
+            byte[] bytes = Files.readAllBytes(entry);
+            bytes[bytes.length - 1] ^= 1;
+            Files.write(entry, bytes);
+            Assertions.assertEquals(new Lexer(input).lex(), cache.lex(input).asList());
+            Files.write(entry, Arrays.copyOf(bytes, 10));
+            Assertions.assertEquals(new Lexer(input).lex(), cache.lex(input).asList());
+            Assertions.assertEquals(new Lexer(input).lex(), cache.lex(input).asList());
+            Assertions.assertEquals(1, cache.getHits());
+            Assertions.assertEquals(3, cache.getMisses());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void testCacheReadOnly() throws IOException {
+        String input = "VAR i = -1 : Integer;\nFUN foo() DO\n    print(\"bar\");\nEND";
+        Path directory = Files.createTempDirectory("tokens");
+        try {
+            TokenCache cache = new TokenCache(directory, 1 << 20);
+            cache.lex(input);
+            Path entry;
+            try (Stream<Path> entries = Files.list(directory)) {
+                entry = entries.findFirst().get();
+            }
+            entry.toFile().setWritable(false);
+            directory.toFile().setWritable(false);
+            Assertions.assertEquals(new Lexer(input).lex(), cache.lex(input).asList());
+            Assertions.assertEquals(new Lexer(input).lex(), cache.lex(input).asList());
+            Assertions.assertTrue(Files.exists(entry));
+            Assertions.assertEquals(2, cache.getHits());
+            Assertions.assertEquals(1, cache.getMisses());
+        } finally {
+            directory.toFile().setWritable(true);
+            delete(directory);
+        }
+    }
+
+    @Test
+    void testCacheEviction() throws IOException {
+        Path directory = Files.createTempDirectory("tokens");
+        try {
+            long size = 32 + 19 * 3;    // A header and three tokens
+            TokenCache cache = new TokenCache(directory, 2 * size);
+            cache.lex("a b c");
+            cache.lex("d e f");
+            cache.lex("a b c");     // Makes "d e f" the least recently used
+            try (Stream<Path> entries = Files.list(directory)) {    // Recency must not depend on modification times, which may be coarse
+                for (Path entry : (Iterable<Path>) entries::iterator) {
+                    Files.setLastModifiedTime(entry, FileTime.fromMillis(0));
+                }
+            }
+            cache.lex("g h i");
+            cache.lex("a b c");
+            cache.lex("d e f");
+            Assertions.assertEquals(2, cache.getHits());
+            Assertions.assertEquals(4, cache.getMisses());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            for (Path entry : (Iterable<Path>) entries::iterator) {
+                Files.delete(entry);
+            }
+        }
+        Files.delete(directory);
+    }
+
     /**
      * Tests that lexing the input through {@link Lexer#lexToken()} produces a
      * single token with the expected type and literal matching the input.
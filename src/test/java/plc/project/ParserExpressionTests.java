@@ -287,6 +287,39 @@ final class ParserExpressionTests {
                                 new Ast.Expression.Access(Optional.empty(), "expr1"),
                                 new Ast.Expression.Binary("!=", new Ast.Expression.Access(Optional.empty(), "expr2"), new Ast.Expression.Access(Optional.empty(), "expr3"))
                         )
+                ),
+                Arguments.of("Subtraction Chain",
+                        Arrays.asList(
+                                //expr1 - expr2 - expr3
+                                new Token(Token.Type.IDENTIFIER, "expr1", 0),
+                                new Token(Token.Type.OPERATOR, "-", 6),
+                                new Token(Token.Type.IDENTIFIER, "expr2", 8),
+                                new Token(Token.Type.OPERATOR, "-", 14),
+                                new Token(Token.Type.IDENTIFIER, "expr3", 16)
+                        ),
+                        new Ast.Expression.Binary("-",
+                                new Ast.Expression.Binary("-", new Ast.Expression.Access(Optional.empty(), "expr1"), new Ast.Expression.Access(Optional.empty(), "expr2")),
+                                new Ast.Expression.Access(Optional.empty(), "expr3")
+                        )
+                ),
+                Arguments.of("Mixed Precedence",
+                        Arrays.asList(
+                                //expr1 * expr2 + expr3 < expr4
+                                new Token(Token.Type.IDENTIFIER, "expr1", 0),
+                                new Token(Token.Type.OPERATOR, "*", 6),
+                                new Token(Token.Type.IDENTIFIER, "expr2", 8),
+                                new Token(Token.Type.OPERATOR, "+", 14),
+                                new Token(Token.Type.IDENTIFIER, "expr3", 16),
+                                new Token(Token.Type.OPERATOR, "<", 22),
+                                new Token(Token.Type.IDENTIFIER, "expr4", 24)
+                        ),
+                        new Ast.Expression.Binary("<",
+                                new Ast.Expression.Binary("+",
+                                        new Ast.Expression.Binary("*", new Ast.Expression.Access(Optional.empty(), "expr1"), new Ast.Expression.Access(Optional.empty(), "expr2")),
+                                        new Ast.Expression.Access(Optional.empty(), "expr3")
+                                ),
+                                new Ast.Expression.Access(Optional.empty(), "expr4")
+                        )
                 )
         );
     }
@@ -6,12 +6,18 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -572,6 +578,272 @@ final class ParserTests {
         test(input, expected, Parser::parseSource);
     }
 
+    @Test
+    void testTokenSource() {
+        // The parser pulls tokens from the lexer on demand instead of taking a token list
+        String input = "VAR first: Integer = 1;\nFUN main(): Integer DO\n    RETURN first + 1;\nEND";
+        Ast.Source expected = new Ast.Source(
+                Arrays.asList(new Ast.Global("first", "Integer", true, Optional.of(new Ast.Expression.Literal(BigInteger.ONE)))),
+                Arrays.asList(new Ast.Function("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+                        new Ast.Statement.Return(
+                                new Ast.Expression.Binary("+",
+                                        new Ast.Expression.Access(Optional.empty(), "first"),
+                                        new Ast.Expression.Literal(BigInteger.ONE)
+                                )
+                        )
+                )))
+        );
+        Assertions.assertEquals(expected, new Parser(new Lexer(new StringReader(input))).parseSource());
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lexBuffer()).parseSource());
+    }
+
+    @Test
+    void testSharedNames() {
+        // Repeated names are materialized once and shared between AST nodes
+        Ast.Expression.Binary binary = (Ast.Expression.Binary) new Parser(new Lexer("name + name").lex()).parseExpression();
+        Assertions.assertSame(
+                ((Ast.Expression.Access) binary.getLeft()).getName(),
+                ((Ast.Expression.Access) binary.getRight()).getName()
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallel(String test, String input) {
+        Ast.Source expected = null;
+        ParseException exception = null;
+        try {
+            expected = new Parser(new Lexer(input).lex()).parseSource();
+        } catch (ParseException e) {
+            exception = e;
+        }
+        List<Supplier<Parser>> parsers = Arrays.asList(
+                () -> new Parser(new Lexer(input).lex()),
+                () -> new Parser(new Lexer(input).lexBuffer())
+        );
+        for (Supplier<Parser> parser : parsers) {
+            AtomicInteger threads = new AtomicInteger();    // The pool only starts workers once a batch is submitted
+            ForkJoinPool pool = new ForkJoinPool(2, p -> {
+                threads.incrementAndGet();
+                return ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            }, null, false);
+            try {
+                if (exception == null) {
+                    Assertions.assertEquals(expected, parser.get().parseSourceParallel(pool));
+                } else {
+                    ParseException actual = Assertions.assertThrows(ParseException.class, () -> parser.get().parseSourceParallel(pool));
+                    Assertions.assertEquals(exception.getIndex(), actual.getIndex());
+                    Assertions.assertEquals(exception.getMessage(), actual.getMessage());
+                }
+                Assertions.assertTrue(threads.get() > 0, "No functions were parsed in parallel.");
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static Stream<Arguments> testParallel() {
+        String source = new ProgramGenerator(0, 200, 4, 2).generate();
+        return Stream.of(
+                Arguments.of("Generated", source),
+                Arguments.of("Error", edit(source, 0.5, ";", "")),
+                Arguments.of("Two Errors", edit(edit(source, 0.8, ";", ""), 0.3, ";", "")),
+                Arguments.of("Missing End", edit(source, 0.5, "\nEND", "")),
+                Arguments.of("Unexpected Token", source + "\nx"),
+                Arguments.of("Error In Header", edit(source, 0.5, "FUN ", "FUN FUN ")),
+                Arguments.of("Keyword In Header", edit(source, 0.5, "):", ") END:"))
+        );
+    }
+
+    /**
+     * Replaces the first occurrence of the target after the given fraction of
+     * the source.
+     */
+    private static String edit(String source, double fraction, String target, String replacement) {
+        int index = source.indexOf(target, (int) (source.length() * fraction));
+        return source.substring(0, index) + replacement + source.substring(index + target.length());
+    }
+
+    @Test
+    void testTokenBufferException() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer("VAR first: Integer = 1").lexBuffer()).parseSource());
+        Assertions.assertEquals(22, exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testEndOfInput(String test, String input, int index) {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input).lex()).parseExpression());
+        Assertions.assertEquals(index, exception.getIndex());
+    }
+
+    private static Stream<Arguments> testEndOfInput() {
+        return Stream.of(
+                Arguments.of("Empty", "", 0),
+                Arguments.of("Missing Operand", "a +", 3),
+                Arguments.of("Missing Closing Parenthesis", "(a", 2),
+                Arguments.of("Missing Argument Separator", "f(a", 3),
+                Arguments.of("Missing Closing Bracket", "list[1", 6)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRecovery(String test, String input, List<Integer> errors, int globals, List<Integer> statements) {
+        List<ParseException> recorded = new ArrayList<>();
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource(recorded);
+        Assertions.assertEquals(errors, recorded.stream().map(ParseException::getIndex).collect(Collectors.toList()));
+        Assertions.assertEquals(globals, ast.getGlobals().size());
+        Assertions.assertEquals(statements, ast.getFunctions().stream().map(function -> function.getStatements().size()).collect(Collectors.toList()));
+        if (errors.isEmpty()) {
+            Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(), ast);
+        }
+    }
+
+    private static Stream<Arguments> testRecovery() {
+        return Stream.of(
+                Arguments.of("Valid", "VAR x: Integer = 1;\nFUN f() DO\n    x = 2;\nEND", Arrays.asList(), 1, Arrays.asList(1)),
+                Arguments.of("Statements", "FUN f() DO\n    x = ;\n    y + ;\n    z;\nEND", Arrays.asList(19, 29), 0, Arrays.asList(1)),
+                Arguments.of("Global", "VAR x: Integer = ;\nVAL y: Integer = 1;\nFUN f() DO END", Arrays.asList(17), 1, Arrays.asList(0)),
+                Arguments.of("Function Header", "FUN f( DO x; END\nFUN g() DO y; END", Arrays.asList(10), 0, Arrays.asList(1)),
+                Arguments.of("Nested Blocks", "FUN f() DO\n    IF x y DO a; END\n    b;\n    WHILE TRUE DO c = ; END\nEND", Arrays.asList(20, 61), 0, Arrays.asList(2)),
+                Arguments.of("Switch", "FUN f() DO\n    SWITCH x y CASE 1: a; DEFAULT b; END\n    c;\nEND", Arrays.asList(24), 0, Arrays.asList(1)),
+                Arguments.of("Missing End", "FUN f() DO\n    x;\nFUN g() DO y; END", Arrays.asList(18), 0, Arrays.asList(1)),
+                Arguments.of("Unexpected Token", "x; VAR y: Integer = 1;\nFUN f() DO END\nVAL z: Integer = 1;", Arrays.asList(0, 38), 2, Arrays.asList(0))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIncremental(String test, String input, String target, String replacement, int changed, int removed) {
+        String edited = input.replace(target, replacement);
+        int start = 0;  // The edit is narrowed down to the characters which differ, as an editor would report it
+        while (start < Math.min(input.length(), edited.length()) && input.charAt(start) == edited.charAt(start)) {
+            start++;
+        }
+        int end = 0;
+        while (end < Math.min(input.length(), edited.length()) - start && input.charAt(input.length() - end - 1) == edited.charAt(edited.length() - end - 1)) {
+            end++;
+        }
+        ParsedSource previous = ParsedSource.parse(input);
+        int offset = start;
+        int length = input.length() - end - start;
+        String inserted = edited.substring(start, edited.length() - end);
+        Ast.Source expected;
+        try {
+            expected = new Parser(new Lexer(edited).lexBuffer()).parseSource();
+        } catch (ParseException e) {
+            ParseException actual = Assertions.assertThrows(ParseException.class, () -> previous.edit(offset, length, inserted));
+            Assertions.assertEquals(e.getIndex(), actual.getIndex());
+            Assertions.assertEquals(e.getMessage(), actual.getMessage());
+            return;
+        }
+        ParsedSource source = previous.edit(offset, length, inserted);
+        Assertions.assertEquals(expected, source.getAst());
+        Assertions.assertEquals(changed, source.getChanged().size());
+        Assertions.assertEquals(removed, source.getRemoved().size());
+        for (int i = 0; i < source.size(); i++) {   // Every node which was not reparsed is reused
+            Ast node = source.node(i);
+            Assertions.assertNotEquals(source.getChanged().stream().anyMatch(changedNode -> changedNode == node), containsSame(previous, node));
+        }
+    }
+
+    private static Stream<Arguments> testIncremental() {
+        String program = "VAR x: Integer = 1;\nVAL y: Integer = 2;\nFUN f() DO\n    x = 1;\nEND\nFUN g() DO\n    x = 2;\nEND\nFUN h() DO\n    x = 3;\nEND";
+        return Stream.of(
+                Arguments.of("Edit Statement", program, "x = 2", "x = 4", 1, 1),
+                Arguments.of("Whitespace", program, "\nFUN g", "\n\n  FUN g", 0, 0),
+                Arguments.of("Insert Function", program, "FUN h", "FUN i() DO END\nFUN h", 1, 0),
+                Arguments.of("Append Function", program, "x = 3;\nEND", "x = 3;\nEND\nFUN z() DO END", 1, 0),
+                Arguments.of("Delete Global", program, "VAL y: Integer = 2;\n", "", 0, 1),
+                Arguments.of("Merge Functions", program, "\nEND\nFUN g() DO", "", 1, 2),
+                Arguments.of("Split Function", program, "    x = 2;", "END\nFUN k() DO\n    x = 2;", 2, 1),
+                Arguments.of("Rename Function", program, "FUN h", "FUN hh", 1, 1),
+                Arguments.of("Error", program, "x = 2;", "x = ;", 0, 0),
+                Arguments.of("Global After Function", program, "FUN h", "VAR z: Integer = 3;\nFUN h", 0, 0)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIterative(String test, String input) {
+        Ast.Source expected;
+        try {
+            expected = new Parser(new Lexer(input).lexBuffer()).parseSource();
+        } catch (ParseException e) {
+            ParseException actual = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(input).lexBuffer()).parseSourceIterative());
+            Assertions.assertEquals(e.getIndex(), actual.getIndex());
+            Assertions.assertEquals(e.getMessage(), actual.getMessage());
+            return;
+        }
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lexBuffer()).parseSourceIterative());
+    }
+
+    private static Stream<Arguments> testIterative() {
+        return Stream.of(
+                Arguments.of("Generated", new ProgramGenerator(0, 50, 4, 3).generate()),
+                Arguments.of("Expressions", "LIST l: Integer = [1, (2 + 3) * 4, f(a, g(), l[i - 1]) ^ 2];\nVAL b: Boolean = a < b && c == d || !e != f - g / h;"),
+                Arguments.of("Statements", "FUN f() DO\n    IF a DO WHILE b DO x = y[z]; END ELSE SWITCH c CASE 1: RETURN d; CASE 2: DEFAULT LET e = 1; END END\n    f(g);\nEND"),
+                Arguments.of("Missing Parenthesis", "VAL x: Integer = ((1 + 2) * 3;"),
+                Arguments.of("Missing Bracket", "VAL x: Integer = l[(1];"),
+                Arguments.of("Trailing Comma", "VAL x: Integer = f(1, 2,);"),
+                Arguments.of("Missing Operand", "VAL x: Integer = 1 + * 2;"),
+                Arguments.of("Missing End", "FUN f() DO IF a DO WHILE b DO END END"),
+                Arguments.of("Two Elses", "FUN f() DO IF a DO x; ELSE y; ELSE z; END END"),
+                Arguments.of("Missing Default", "FUN f() DO SWITCH a CASE 1: x; END END"),
+                Arguments.of("Case Without Colon", "FUN f() DO SWITCH a CASE 1 x; DEFAULT y; END END")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIterativeDepth(String test, String prefix, String innermost, String suffix, String end, int nodes) {
+        int depth = 100_000;
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            builder.append(prefix);
+        }
+        builder.append(innermost);
+        for (int i = 0; i < depth; i++) {
+            builder.append(suffix);
+        }
+        Ast.Source ast = new Parser(new Lexer("FUN f() DO " + builder + end + " END").lexBuffer()).parseSourceIterative();
+        List<Ast> preOrder = new ArrayList<>();
+        List<Ast> postOrder = new ArrayList<>();
+        AstTraversal.preOrder(ast, preOrder::add);
+        AstTraversal.postOrder(ast, postOrder::add);
+        Assertions.assertEquals(4 + nodes * depth, preOrder.size());    // Source, function, statement and innermost access
+        Assertions.assertEquals(preOrder.size(), postOrder.size());
+        Assertions.assertSame(ast, preOrder.get(0));
+        Assertions.assertSame(ast, postOrder.get(postOrder.size() - 1));
+        Assertions.assertEquals(new Ast.Expression.Access(Optional.empty(), "x"), preOrder.get(preOrder.size() - 1));
+    }
+
+    private static Stream<Arguments> testIterativeDepth() {
+        return Stream.of(
+                Arguments.of("Groups", "(", "x", ")", ";", 1),
+                Arguments.of("Accesses", "l[", "x", "]", ";", 1),
+                Arguments.of("Calls", "f(1, ", "x", ")", ";", 2),
+                Arguments.of("Operators", "(1 + ", "x", ")", ";", 3),
+                Arguments.of("Blocks", "IF TRUE DO WHILE FALSE DO ", "x;", " END END", "", 4)
+        );
+    }
+
+    /**
+     * Returns whether the node is one of the nodes of the source, rather than
+     * just equal to one.
+     */
+    private static boolean containsSame(ParsedSource source, Ast node) {
+        for (int i = 0; i < source.size(); i++) {
+            if (source.node(i) == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).
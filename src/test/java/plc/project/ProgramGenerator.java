@@ -0,0 +1,434 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates random, well-typed PLC programs for stress tests and benchmarks.
+ * The same seed and shape always produce the same program.
+ *
+ * Every generated program passes the {@link Analyzer} and also runs to
+ * completion in the {@link Interpreter}: loops count up to a small bound with
+ * a counter that is never assigned in the body, recursive functions count
+ * down from a small argument, lists are only indexed within their bounds and
+ * divisors are non-zero literals. To keep the running time linear in the size
+ * of the program, functions only call recursive functions (which call nothing
+ * but themselves), and values grow by at most a constant factor per
+ * assignment.
+ */
+public final class ProgramGenerator {
+
+    private static final Environment.Type[] TYPES = {
+            Environment.Type.INTEGER,
+            Environment.Type.DECIMAL,
+            Environment.Type.BOOLEAN,
+            Environment.Type.CHARACTER,
+            Environment.Type.STRING
+    };
+    private static final Environment.Type[] COMPARABLE_TYPES = {
+            Environment.Type.INTEGER,
+            Environment.Type.DECIMAL,
+            Environment.Type.CHARACTER,
+            Environment.Type.STRING
+    };
+    private static final String[] WORDS = {"alpha", "beta", "gamma", "delta", "epsilon", "zeta", "eta", "theta"};
+    private static final int EXPRESSION_DEPTH = 3;
+    private static final int MAX_ITERATIONS = 3;    // Upper bound of every WHILE loop
+    private static final int MAX_RECURSION = 5;     // Largest argument passed to a recursive function
+    private static final int MAX_PARAMETERS = 3;
+    private static final int MAX_LIST_LENGTH = 4;
+
+    private final long seed;
+    private final int functions;
+    private final int statements;
+    private final int depth;
+
+    private Random random;
+    private StringBuilder builder;
+    private int indent;
+    private int names;  // Counter giving every declared name a unique suffix
+    private final List<Variable> variables = new ArrayList<>();     // Variables in scope, innermost last
+    private final List<String> callable = new ArrayList<>();    // Recursive functions the current function may call
+
+    /**
+     * Creates a generator for programs with the given number of functions
+     * (besides main), at most the given number of statements per block and
+     * IF/SWITCH/WHILE statements nested at most depth levels deep.
+     */
+    public ProgramGenerator(long seed, int functions, int statements, int depth) {
+        this.seed = seed;
+        this.functions = functions;
+        this.statements = statements;
+        this.depth = depth;
+    }
+
+    public String generate() {
+        random = new Random(seed);
+        builder = new StringBuilder();
+        indent = 0;
+        names = 0;
+        variables.clear();
+        callable.clear();
+
+        int globals = 2 + functions / 4;
+        for (int i = 0; i < globals; i++) {
+            global();
+        }
+        builder.append('\n');
+        List<String> calls = new ArrayList<>();     // Calls made by main, one for each non-recursive function
+        for (int i = 0; i < functions; i++) {
+            if (random.nextInt(3) == 0) {
+                recursiveFunction("f" + i);
+            }
+            else {
+                calls.add(function("f" + i));
+            }
+            builder.append('\n');
+        }
+        main(calls);
+        return builder.toString();
+    }
+
+    private void global() {
+        String name = "g" + names++;
+        Environment.Type type = pick(TYPES);
+        int choice = random.nextInt(3);
+        if (choice == 0) {
+            int length = 1 + random.nextInt(MAX_LIST_LENGTH);
+            List<String> values = new ArrayList<>();
+            for (int i = 0; i < length; i++) {
+                values.add(expression(type, 1));
+            }
+            line("LIST " + name + ": " + type.getName() + " = [" + String.join(", ", values) + "];");
+            variables.add(new Variable(name, type, false, length));     // Elements are read but never assigned
+        }
+        else {
+            boolean mutable = choice == 1;
+            line((mutable ? "VAR " : "VAL ") + name + ": " + type.getName() + " = " + expression(type, 2) + ";");
+            variables.add(new Variable(name, type, mutable, 0));
+        }
+    }
+
+    /**
+     * Generates a non-recursive function and returns a call to it with
+     * arguments of the right types.
+     */
+    private String function(String name) {
+        int mark = variables.size();
+        int count = random.nextInt(MAX_PARAMETERS + 1);
+        List<String> parameters = new ArrayList<>();
+        List<String> arguments = new ArrayList<>();
+        List<Variable> declared = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Environment.Type type = pick(TYPES);
+            String parameter = "p" + names++;
+            parameters.add(parameter + ": " + type.getName());
+            arguments.add(expression(type, 1));     // Main only sees the globals, so parameters are added afterwards
+            declared.add(new Variable(parameter, type, true, 0));
+        }
+        variables.addAll(declared);
+        Environment.Type returns = pick(TYPES);
+        line("FUN " + name + "(" + String.join(", ", parameters) + "): " + returns.getName() + " DO");
+        indent++;
+        block(depth);
+        line("RETURN " + expression(returns, EXPRESSION_DEPTH) + ";");
+        indent--;
+        line("END");
+        truncate(mark);
+        return name + "(" + String.join(", ", arguments) + ")";
+    }
+
+    /**
+     * Generates a function which calls itself with a decreasing argument,
+     * which is then available to all following functions.
+     */
+    private void recursiveFunction(String name) {
+        int mark = variables.size();
+        List<String> previous = new ArrayList<>(callable);
+        callable.clear();   // The body may not call other functions, so each call costs at most MAX_RECURSION levels
+        String parameter = "n" + names++;
+        variables.add(new Variable(parameter, Environment.Type.INTEGER, false, 0));
+        line("FUN " + name + "(" + parameter + ": Integer): Integer DO");
+        indent++;
+        line("IF " + parameter + " < 1 DO");
+        indent++;
+        line("RETURN " + expression(Environment.Type.INTEGER, EXPRESSION_DEPTH) + ";");
+        indent--;
+        line("END");
+        block(depth);
+        line("RETURN " + name + "(" + parameter + " - 1) + " + operand(Environment.Type.INTEGER, EXPRESSION_DEPTH - 1) + ";");
+        indent--;
+        line("END");
+        truncate(mark);
+        callable.addAll(previous);
+        callable.add(name);
+    }
+
+    private void main(List<String> calls) {
+        line("FUN main(): Integer DO");
+        indent++;
+        line("LET result: Integer = 0;");
+        for (String call : calls) {
+            line("LET r" + names++ + " = " + call + ";");
+        }
+        if (!callable.isEmpty()) {
+            line("result = result + " + pick(callable) + "(" + random.nextInt(MAX_RECURSION + 1) + ");");
+        }
+        line("RETURN result;");
+        indent--;
+        line("END");
+    }
+
+    /**
+     * Generates between one and the maximum number of statements, with the
+     * given number of nesting levels remaining.
+     */
+    private void block(int depth) {
+        int mark = variables.size();
+        int count = 1 + random.nextInt(statements);
+        for (int i = 0; i < count; i++) {
+            statement(depth);
+        }
+        truncate(mark);
+    }
+
+    private void statement(int depth) {
+        switch (random.nextInt(depth > 0 ? 7 : 3)) {
+            case 0:
+                declaration();
+                break;
+            case 1:
+                assignment();
+                break;
+            case 2:
+                if (callable.isEmpty()) {
+                    declaration();
+                }
+                else {
+                    line(call() + ";");
+                }
+                break;
+            case 3:
+                ifStatement(depth);
+                break;
+            case 4:
+                switchStatement(depth);
+                break;
+            default:
+                whileStatement(depth);
+                break;
+        }
+    }
+
+    private void declaration() {
+        Environment.Type type = pick(TYPES);
+        String name = "v" + names++;
+        String value = expression(type, EXPRESSION_DEPTH);
+        if (random.nextBoolean()) {
+            line("LET " + name + ": " + type.getName() + " = " + value + ";");
+        }
+        else {  // Let the analyzer infer the type from the value
+            line("LET " + name + " = " + value + ";");
+        }
+        variables.add(new Variable(name, type, true, 0));
+    }
+
+    private void assignment() {
+        List<Variable> assignable = new ArrayList<>();
+        for (Variable variable : variables) {
+            if (variable.mutable) {
+                assignable.add(variable);
+            }
+        }
+        if (assignable.isEmpty()) {
+            declaration();
+            return;
+        }
+        Variable variable = pick(assignable);
+        line(variable.name + " = " + expression(variable.type, EXPRESSION_DEPTH) + ";");
+    }
+
+    private void ifStatement(int depth) {
+        line("IF " + expression(Environment.Type.BOOLEAN, EXPRESSION_DEPTH) + " DO");
+        nested(depth);
+        if (random.nextBoolean()) {
+            line("ELSE");
+            nested(depth);
+        }
+        line("END");
+    }
+
+    private void switchStatement(int depth) {
+        Environment.Type type = random.nextBoolean() ? Environment.Type.INTEGER : Environment.Type.CHARACTER;
+        line("SWITCH " + expression(type, EXPRESSION_DEPTH));
+        indent++;
+        int cases = random.nextInt(3);
+        for (int i = 0; i < cases; i++) {   // Consecutive values, so every case is distinct
+            line("CASE " + (type == Environment.Type.INTEGER ? String.valueOf(i) : "'" + (char) ('a' + i) + "'") + ":");
+            nested(depth);
+        }
+        line("DEFAULT");
+        nested(depth);
+        indent--;
+        line("END");
+    }
+
+    private void whileStatement(int depth) {
+        String counter = "w" + names++;
+        line("LET " + counter + ": Integer = 0;");
+        variables.add(new Variable(counter, Environment.Type.INTEGER, false, 0));   // Only incremented below
+        line("WHILE " + counter + " < " + (1 + random.nextInt(MAX_ITERATIONS)) + " DO");
+        indent++;
+        block(depth - 1);
+        line(counter + " = " + counter + " + 1;");
+        indent--;
+        line("END");
+    }
+
+    private void nested(int depth) {
+        indent++;
+        block(depth - 1);
+        indent--;
+    }
+
+    private String call() {
+        return pick(callable) + "(" + random.nextInt(MAX_RECURSION + 1) + ")";
+    }
+
+    /**
+     * Generates an expression of the given type with binary operators nested
+     * at most depth levels deep.
+     */
+    private String expression(Environment.Type type, int depth) {
+        if (depth == 0 || random.nextInt(3) == 0 || type.equals(Environment.Type.CHARACTER)) {
+            return leaf(type);
+        }
+        return binary(type, depth);
+    }
+
+    /**
+     * Generates an expression which is parenthesized if it is a binary
+     * expression, so it can be used as the operand of another one.
+     */
+    private String operand(Environment.Type type, int depth) {
+        if (depth == 0 || random.nextInt(3) == 0 || type.equals(Environment.Type.CHARACTER)) {
+            return leaf(type);
+        }
+        return "(" + binary(type, depth) + ")";
+    }
+
+    private String binary(Environment.Type type, int depth) {
+        switch (type.getName()) {
+            case "Integer":
+                switch (random.nextInt(5)) {
+                    case 0:
+                        return operand(type, depth - 1) + " + " + operand(type, depth - 1);
+                    case 1:
+                        return operand(type, depth - 1) + " - " + operand(type, depth - 1);
+                    case 2:     // Multiplying by a literal only, so values cannot square themselves in a loop
+                        return operand(type, depth - 1) + " * " + random.nextInt(10);
+                    case 3:
+                        return operand(type, depth - 1) + " / " + (1 + random.nextInt(9));
+                    default:
+                        return random.nextInt(10) + " ^ " + random.nextInt(4);
+                }
+            case "Decimal":
+                switch (random.nextInt(4)) {
+                    case 0:
+                        return operand(type, depth - 1) + " + " + operand(type, depth - 1);
+                    case 1:
+                        return operand(type, depth - 1) + " - " + operand(type, depth - 1);
+                    case 2:
+                        return operand(type, depth - 1) + " * " + decimal();
+                    default:
+                        return operand(type, depth - 1) + " / " + (1 + random.nextInt(9)) + ".5";
+                }
+            case "Boolean":
+                if (random.nextBoolean()) {
+                    Environment.Type compared = pick(COMPARABLE_TYPES);
+                    String operator = pick(new String[] {"<", ">", "==", "!="});
+                    return operand(compared, depth - 1) + " " + operator + " " + operand(compared, depth - 1);
+                }
+                return operand(type, depth - 1) + (random.nextBoolean() ? " && " : " || ") + operand(type, depth - 1);
+            default:    // Only the left side can be a string, so a string can never double in length
+                return operand(type, depth - 1) + " + " + operand(pick(TYPES, 4), depth - 1);
+        }
+    }
+
+    private String leaf(Environment.Type type) {
+        List<Variable> candidates = new ArrayList<>();
+        for (Variable variable : variables) {
+            if (variable.type.equals(type)) {
+                candidates.add(variable);
+            }
+        }
+        int choice = random.nextInt(3);
+        if (choice == 0 && !candidates.isEmpty()) {
+            Variable variable = pick(candidates);
+            return variable.length > 0 ? variable.name + "[" + random.nextInt(variable.length) + "]" : variable.name;
+        }
+        if (choice == 1 && type.equals(Environment.Type.INTEGER) && !callable.isEmpty()) {
+            return call();
+        }
+        switch (type.getName()) {
+            case "Integer":
+                return String.valueOf(random.nextInt(100));
+            case "Decimal":
+                return decimal();
+            case "Boolean":
+                return random.nextBoolean() ? "TRUE" : "FALSE";
+            case "Character":
+                return random.nextInt(8) == 0 ? "'\\n'" : "'" + (char) ('a' + random.nextInt(26)) + "'";
+            default:
+                return "\"" + pick(WORDS) + (random.nextInt(4) == 0 ? "\\t" : " ") + pick(WORDS) + "\"";
+        }
+    }
+
+    private String decimal() {
+        return random.nextInt(100) + "." + random.nextInt(100);
+    }
+
+    private void line(String line) {
+        for (int i = 0; i < indent; i++) {
+            builder.append("    ");
+        }
+        builder.append(line).append('\n');
+    }
+
+    private void truncate(int size) {
+        variables.subList(size, variables.size()).clear();
+    }
+
+    private <T> T pick(T[] values) {
+        return pick(values, values.length);
+    }
+
+    /**
+     * Picks one of the first count values.
+     */
+    private <T> T pick(T[] values, int count) {
+        return values[random.nextInt(count)];
+    }
+
+    private <T> T pick(List<T> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private static final class Variable {
+
+        private final String name;
+        private final Environment.Type type;
+        private final boolean mutable;
+        private final int length;   // Number of elements of a list, or 0 if it is not a list
+
+        private Variable(String name, Environment.Type type, boolean mutable, int length) {
+            this.name = name;
+            this.type = type;
+            this.mutable = mutable;
+            this.length = length;
+        }
+
+    }
+
+}
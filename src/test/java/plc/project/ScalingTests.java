@@ -0,0 +1,93 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Stress tests over programs from {@link ProgramGenerator}, checking that
+ * they are valid and that the time taken by each phase grows roughly linearly
+ * with the size of the program.
+ *
+ * The timing checks measure wall-clock time, which is unreliable on a loaded
+ * machine, so they are tagged {@code scaling} and only run by
+ * {@code gradlew scalingTest}.
+ */
+final class ScalingTests {
+
+    private static final int SMALL = 100;   // Number of functions in the smaller program, large enough not to fit in the CPU caches
+    private static final int FACTOR = 8;    // How many times larger the larger program is
+    private static final int RUNS = 5;
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testGenerated(String test, long seed, int functions, int statements, int depth) {
+        Ast.Source ast = new Parser(new Lexer(new ProgramGenerator(seed, functions, statements, depth).generate()).lex()).parseSource();
+        Assertions.assertDoesNotThrow(() -> new Analyzer(new Scope(null)).visit(ast));
+        Assertions.assertDoesNotThrow(() -> new Interpreter(new Scope(null)).visit(ast));
+    }
+
+    private static Stream<Arguments> testGenerated() {
+        return Stream.of(
+                Arguments.of("Single Function", 1L, 1, 3, 1),
+                Arguments.of("Flat", 2L, 20, 8, 0),
+                Arguments.of("Nested", 3L, 20, 3, 4),
+                Arguments.of("Many Functions", 4L, 200, 3, 2)
+        );
+    }
+
+    @Test
+    void testDeterministic() {
+        Assertions.assertEquals(new ProgramGenerator(5, 10, 4, 2).generate(), new ProgramGenerator(5, 10, 4, 2).generate());
+        Assertions.assertNotEquals(new ProgramGenerator(5, 10, 4, 2).generate(), new ProgramGenerator(6, 10, 4, 2).generate());
+    }
+
+    @Tag("scaling")
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testScaling(String test, Function<String, Object> phase) {
+        String small = new ProgramGenerator(0, SMALL, 4, 2).generate();
+        String large = new ProgramGenerator(0, SMALL * FACTOR, 4, 2).generate();
+        time(phase, large);     // Warm up the JIT before measuring
+        double ratio = (double) time(phase, large) / time(phase, small);
+        double expected = (double) large.length() / small.length();
+        // Allows for a constant slowdown from caches and the GC on the larger heap, while quadratic growth is another FACTOR times slower
+        Assertions.assertTrue(ratio < expected * 4, "Time grew by " + ratio + " for an input " + expected + " times larger.");
+    }
+
+    private static Stream<Arguments> testScaling() {
+        Function<String, Object> lex = source -> new Lexer(source).lex();
+        Function<String, Object> parse = source -> new Parser(new Lexer(source).lex()).parseSource();
+        Function<String, Object> analyze = source -> {
+            Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+            new Analyzer(new Scope(null)).visit(ast);
+            return ast;
+        };
+        return Stream.of(
+                Arguments.of("Lexer", lex),
+                Arguments.of("Parser", parse),
+                Arguments.of("Analyzer", analyze)
+        );
+    }
+
+    /**
+     * Returns the fastest of several runs of the phase in nanoseconds, which is
+     * the least affected by noise.
+     */
+    private static long time(Function<String, Object> phase, String source) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            phase.apply(source);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+}